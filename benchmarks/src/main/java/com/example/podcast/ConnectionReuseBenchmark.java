@@ -0,0 +1,98 @@
+package com.example.podcast;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// downloads a small episode from a local TLS server over the shared client's pooled connection,
+// or over a fresh client per download which pays the TCP and TLS handshakes every time
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConnectionReuseBenchmark {
+    @Param({"65536"})
+    public int episodeBytes;
+
+    @Param({"true", "false"})
+    public boolean sharedClient;
+
+    private Path workFolder;
+    private StubHttpServer server;
+    private EpisodeDownloader downloader;
+    private CamelContext context;
+
+    @Setup
+    public void setUp() throws IOException {
+        workFolder = Files.createTempDirectory("podcast-benchmark");
+        byte[] episode = new byte[episodeBytes];
+        new Random(42).nextBytes(episode);
+        server = new StubHttpServer(true);
+        server.resource("/podcast.mp3", episode);
+        context = new DefaultCamelContext();
+        if (sharedClient) {
+            downloader = newDownloader();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newClient() throws IOException {
+        if (!sharedClient) {
+            if (downloader != null) {
+                downloader.shutdown();
+            }
+            downloader = newDownloader();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        downloader.shutdown();
+        server.close();
+        FileSystemUtils.deleteRecursively(workFolder);
+    }
+
+    @TearDown(Level.Invocation)
+    public void dropWorkFiles() throws IOException {
+        FileSystemUtils.deleteRecursively(workFolder.resolve("feed"));
+    }
+
+    @Benchmark
+    public Object download() throws Exception {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader("enclosureUrl", server.url("/podcast.mp3"));
+        exchange.getIn().setHeader("feedId", "feed");
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "podcast.mp3");
+        downloader.download(exchange);
+        return exchange.getIn().getBody();
+    }
+
+    private EpisodeDownloader newDownloader() throws IOException {
+        SharedHttpClient httpClient = new SharedHttpClient(1000, HttpClient.Version.HTTP_2, 8, 300, StubHttpServer.clientSslContext());
+        return new EpisodeDownloader(workFolder.toString(), 10000, Long.MAX_VALUE, 1, new BandwidthLimiter(0, 0), httpClient);
+    }
+}
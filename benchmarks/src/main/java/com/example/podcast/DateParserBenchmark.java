@@ -0,0 +1,49 @@
+package com.example.podcast;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+// pubDate parsing: java.time as formerly used by UpdateHelper and FeedParser against Rfc822DateParser
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateParserBenchmark {
+    private static final int Dates = 1024;
+
+    private String[] dates;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        ZonedDateTime now = ZonedDateTime.now();
+        dates = new String[Dates];
+        for (int i = 0; i < Dates; i++) {
+            dates[i] = now.minusHours(i).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        }
+    }
+
+    @Benchmark
+    public long javaTime() {
+        return ZonedDateTime.parse(dates[next++ & (Dates - 1)], DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+    }
+
+    @Benchmark
+    public long rfc822() {
+        return Rfc822DateParser.parseMillis(dates[next++ & (Dates - 1)]);
+    }
+}
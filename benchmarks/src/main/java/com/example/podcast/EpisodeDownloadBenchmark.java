@@ -0,0 +1,81 @@
+package com.example.podcast;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// streams one episode from a local HTTP server into a work file, in one piece or in parallel ranges
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SingleShotTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EpisodeDownloadBenchmark {
+    @Param({"67108864"})
+    public int episodeBytes;
+
+    @Param({"1", "4"})
+    public int segments;
+
+    private Path workFolder;
+    private StubHttpServer server;
+    private EpisodeDownloader downloader;
+    private CamelContext context;
+
+    @Setup
+    public void setUp() throws IOException {
+        workFolder = Files.createTempDirectory("podcast-benchmark");
+        byte[] episode = new byte[episodeBytes];
+        new Random(42).nextBytes(episode);
+        server = new StubHttpServer();
+        server.resource("/podcast.mp3", episode);
+        downloader = new EpisodeDownloader(workFolder.toString(), 10000, 0, segments, new BandwidthLimiter(0, 0),
+                new SharedHttpClient(1000, HttpClient.Version.HTTP_2, 8, 300));
+        context = new DefaultCamelContext();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        downloader.shutdown();
+        server.close();
+        FileSystemUtils.deleteRecursively(workFolder);
+    }
+
+    @TearDown(Level.Invocation)
+    public void dropWorkFiles() throws IOException {
+        FileSystemUtils.deleteRecursively(workFolder.resolve("feed"));
+    }
+
+    @Benchmark
+    public Object download() throws Exception {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader("enclosureUrl", server.url("/podcast.mp3"));
+        exchange.getIn().setHeader("feedId", "feed");
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "podcast.mp3");
+        downloader.download(exchange);
+        return exchange.getIn().getBody();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.podcast;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+// Parsing of a whole feed: the XPath baseline mirrors the former route, which split rss/channel/item into
+// documents of their own and read pubDate, guid and enclosure/@url from each of them.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedParserBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int items;
+
+    private byte[] feed;
+    private FeedParser feedParser;
+    private DocumentBuilder documentBuilder;
+    private XPathExpression itemsExpression;
+    private XPathExpression pubDateExpression;
+    private XPathExpression guidExpression;
+    private XPathExpression enclosureUrlExpression;
+
+    @Setup
+    public void setUp() throws Exception {
+        feed = SyntheticFeed.rss(items, ZonedDateTime.now(), "http://localhost/podcast.mp3");
+        feedParser = new FeedParser();
+
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        itemsExpression = xpath.compile("rss/channel/item");
+        pubDateExpression = xpath.compile("/item/pubDate/text()");
+        guidExpression = xpath.compile("/item/guid/text()");
+        enclosureUrlExpression = xpath.compile("/item/enclosure/@url");
+    }
+
+    @Benchmark
+    public void xpath(Blackhole blackhole) throws Exception {
+        Document document = documentBuilder.parse(new ByteArrayInputStream(feed));
+        NodeList itemNodes = (NodeList) itemsExpression.evaluate(document, XPathConstants.NODESET);
+        for (int i = 0; i < itemNodes.getLength(); i++) {
+            Document item = documentBuilder.newDocument();
+            item.appendChild(item.importNode(itemNodes.item(i), true));
+            blackhole.consume(pubDateExpression.evaluate(item));
+            blackhole.consume(guidExpression.evaluate(item));
+            blackhole.consume(enclosureUrlExpression.evaluate(item));
+        }
+    }
+
+    @Benchmark
+    public void stax(Blackhole blackhole) {
+        Iterator<FeedItem> feedItems = feedParser.parse(new ByteArrayInputStream(feed), null, null);
+        while (feedItems.hasNext()) {
+            blackhole.consume(feedItems.next());
+        }
+    }
+}
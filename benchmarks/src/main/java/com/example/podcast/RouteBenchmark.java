@@ -0,0 +1,92 @@
+package com.example.podcast;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+// A whole poll of one feed served by a local HTTP server: fetch, parse and filter of every item. All items are older
+// than notOlderThanDays and the state of the feed is dropped before each poll, so nothing is downloaded and no item
+// is skipped by the parser.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int items;
+
+    private Path folder;
+    private StubHttpServer server;
+    private ConfigurableApplicationContext application;
+    private ProducerTemplate template;
+    private String feedPollUrl;
+    private Feed feed;
+    private FeedStateStore feedStateStore;
+
+    @Setup
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("podcast-benchmark");
+        server = new StubHttpServer();
+        server.resource("/feed.rss", SyntheticFeed.rss(items, ZonedDateTime.now().minusDays(30), server.url("/podcast.mp3")));
+
+        application = new SpringApplicationBuilder(PodcastApplication.class)
+                .run( // command line arguments take precedence over application.properties
+                        "--camel.springboot.main-run-controller=false",
+                        "--logging.level.root=WARN",
+                        "--destFolder=" + folder.resolve("podcasts"),
+                        "--stateFolder=" + folder.resolve("state"),
+                        "--blobFolder=" + folder.resolve("blobs"),
+                        "--workFolder=" + folder.resolve("work"),
+                        "--notOlderThanDays=7",
+                        "--metricsPort=-1",
+                        "--feedPollInterval=365d",
+                        "--feeds[0].id=bench",
+                        "--feeds[0].url=" + server.url("/feed.rss"));
+        CamelContext context = application.getBean(CamelContext.class);
+        context.getRouteController().stopRoute("feedScheduler"); // polls are sent by the benchmark only
+        template = context.createProducerTemplate();
+        feedPollUrl = application.getBean(UrlProvider.class).getFeedPollUrl();
+        feed = application.getBean(FeedRegistry.class).getFeeds().get(0);
+        feedStateStore = application.getBean(FeedStateStore.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        application.close();
+        server.close();
+        FileSystemUtils.deleteRecursively(folder);
+    }
+
+    @Setup(Level.Invocation)
+    public void dropFeedState() throws IOException {
+        FileSystemUtils.deleteRecursively(feedStateStore.feedFolder(feed.getId()));
+    }
+
+    @Benchmark
+    public Object pollFeed() {
+        return template.requestBody(feedPollUrl, feed); // an InOut exchange waits for the seda consumer to finish the poll
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.podcast;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+// builds RSS feeds shaped like the ones published by mujrozhlas.cz, newest item first
+final class SyntheticFeed {
+    private SyntheticFeed() {
+    }
+
+    static byte[] rss(int items, ZonedDateTime newest, String enclosureUrl) {
+        StringBuilder rss = new StringBuilder(600 * items + 500)
+                .append("<rss xmlns:itunes=\"http://www.itunes.com/dtds/podcast-1.0.dtd\" version=\"2.0\">\n")
+                .append("    <channel>\n")
+                .append("        <title>Synthetic Podcast</title>\n")
+                .append("        <link>https://test/rss/feed</link>\n")
+                .append("        <ttl>1440</ttl>\n")
+                .append("        <description><![CDATA[ Synthetic RSS feed. ]]></description>\n");
+        for (int i = 0; i < items; i++) {
+            rss.append("        <item>\n")
+                    .append("            <title>Item ").append(i).append("</title>\n")
+                    .append("            <description><![CDATA[ <p>Episode ").append(i).append(" of the synthetic podcast.</p> ]]></description>\n")
+                    .append("            <itunes:summary>Episode ").append(i).append("</itunes:summary>\n")
+                    .append("            <itunes:duration>00:25:11</itunes:duration>\n")
+                    .append("            <pubDate>").append(newest.minusHours(i).format(DateTimeFormatter.RFC_1123_DATE_TIME)).append("</pubDate>\n")
+                    .append("            <enclosure url=\"").append(enclosureUrl).append("?episode=").append(i).append("\" type=\"audio/mpeg\" length=\"36271017\"/>\n")
+                    .append("            <guid isPermaLink=\"false\">episode-").append(i).append("</guid>\n")
+                    .append("            <link>https://test/").append(i).append("</link>\n")
+                    .append("        </item>\n");
+        }
+        rss.append("    </channel>\n").append("</rss>\n");
+        return rss.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.podcast;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+// the per item filter of the route: guid lookup, date parsing and comparison with the latest loaded podcast
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateHelperBenchmark {
+    private static final int Publications = 1024;
+
+    private Path stateFolder;
+    private GuidIndex guidIndex;
+    private UpdateHelper updateHelper;
+    private String[] guids;
+    private String[] publicationDates;
+    private long needNewerThanMillis;
+    private long notOlderThanMillis;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        stateFolder = Files.createTempDirectory("podcast-benchmark");
+        guidIndex = new GuidIndex(stateFolder.resolve("loadedGuids.idx"), 10_000);
+        guidIndex.track("feed"); // no guid is added to the index while measuring
+        updateHelper = new UpdateHelper(7, guidIndex);
+
+        ZonedDateTime now = ZonedDateTime.now();
+        guids = new String[Publications];
+        publicationDates = new String[Publications];
+        for (int i = 0; i < Publications; i++) {
+            guids[i] = "episode-" + i;
+            publicationDates[i] = now.minusHours(i).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        }
+        needNewerThanMillis = updateHelper.needNewerThanMillis(now.minusDays(3).format(DateTimeFormatter.RFC_1123_DATE_TIME));
+        notOlderThanMillis = updateHelper.notOlderThanMillis();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        guidIndex.close();
+        FileSystemUtils.deleteRecursively(stateFolder);
+    }
+
+    @Benchmark
+    public boolean isSuitablePublication() {
+        int i = next++ & (Publications - 1);
+        return updateHelper.isSuitablePublication("feed", guids[i], publicationDates[i], needNewerThanMillis, notOlderThanMillis);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.podcast;
+
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+
+// helpers shared by the non-blocking feed and episode fetches
+final class AsyncHttp {
+    private AsyncHttp() {
+    }
+
+    // drops the connection instead of reading a body nobody wants, e.g. a whole episode sent instead of a range
+    static <T> HttpResponse.BodySubscriber<T> cancelling(T result) {
+        return new Cancelling<>(CompletableFuture.completedFuture(result));
+    }
+
+    static <T> HttpResponse.BodySubscriber<T> failing(Throwable failure) {
+        return new Cancelling<>(CompletableFuture.failedFuture(failure));
+    }
+
+    static Throwable unwrap(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException || failure instanceof UncheckedIOException)
+                && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+
+    static Map<String, String> firstValues(HttpHeaders headers) {
+        return headers.map().entrySet().stream()
+                .filter(header -> !header.getValue().isEmpty())
+                .collect(Collectors.toMap(Map.Entry::getKey, header -> header.getValue().get(0)));
+    }
+
+    private static class Cancelling<T> implements HttpResponse.BodySubscriber<T> {
+        private final CompletableFuture<T> body;
+
+        Cancelling(CompletableFuture<T> body) {
+            this.body = body;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
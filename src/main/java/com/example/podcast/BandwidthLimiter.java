@@ -0,0 +1,35 @@
+package com.example.podcast;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Shapes the download traffic with a global token bucket and one per host, a rate of 0 or less means no limit.
+@Component
+public class BandwidthLimiter {
+    private final ConcurrentMap<String, TokenBucket> hostBuckets = new ConcurrentHashMap<>();
+
+    private TokenBucket globalBucket;
+    private long maxHostBytesPerSecond;
+
+    @Autowired
+    public BandwidthLimiter(@Value("${maxDownloadBytesPerSecond}") long maxDownloadBytesPerSecond,
+                            @Value("${maxHostDownloadBytesPerSecond}") long maxHostDownloadBytesPerSecond) {
+        this.globalBucket = maxDownloadBytesPerSecond > 0 ? new TokenBucket(maxDownloadBytesPerSecond, System.nanoTime()) : null;
+        this.maxHostBytesPerSecond = maxHostDownloadBytesPerSecond;
+    }
+
+    // nanos the download of the url should pause after receiving the bytes
+    public long pauseNanos(String url, long bytes) {
+        long now = System.nanoTime();
+        long pause = globalBucket != null ? globalBucket.take(bytes, now) : 0;
+        if (maxHostBytesPerSecond > 0) {
+            TokenBucket hostBucket = hostBuckets.computeIfAbsent(Urls.hostOf(url), host -> new TokenBucket(maxHostBytesPerSecond, now));
+            pause = Math.max(pause, hostBucket.take(bytes, now));
+        }
+        return pause;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.language.simple.Simple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Episodes that still failed after their retries, kept per feed in stateFolder/<id>/deadLetters.txt. The next poll of
+// the feed gets them after the feed's own items, so they are tried again even when reading the feed stops above them.
+// An episode leaves the list once it is loaded, or once it is no longer suitable, e.g. older than notOlderThanDays.
+@Component
+public class DeadLetterList {
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterList.class);
+
+    private final ConcurrentMap<String, Poll> polls = new ConcurrentHashMap<>();
+
+    private FeedStateStore feedStateStore;
+
+    @Autowired
+    public DeadLetterList(FeedStateStore feedStateStore) {
+        this.feedStateStore = feedStateStore;
+    }
+
+    public Iterator<FeedItem> withRetries(@Simple("${header.feedId}") String feedId, Iterator<FeedItem> items) throws IOException {
+        Map<String, DeadLetter> retries = new LinkedHashMap<>();
+        // attempts, guid, pubDate, enclosure length, type or -, url
+        for (String line : feedStateStore.readDeadLetters(feedId)) {
+            String[] fields = line.split("\t", 6);
+            if (fields.length == 6) {
+                FeedItem item = new FeedItem(fields[1], fields[2], fields[5], Long.parseLong(fields[3]), "-".equals(fields[4]) ? null : fields[4]);
+                retries.put(item.getGuid(), new DeadLetter(Integer.parseInt(fields[0]), item));
+            }
+        }
+        polls.put(feedId, new Poll(retries));
+        return new RetryingIterator(items, retries);
+    }
+
+    // the episode failed in this poll for good, the dead letter channel hands it over with the failure
+    public void add(Exchange exchange) {
+        String feedId = exchange.getMessage().getHeader("feedId", String.class);
+        String guid = exchange.getMessage().getHeader("guid", String.class);
+        Poll poll = polls.get(feedId);
+        Throwable failure = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+        if (poll == null || guid == null || guid.matches(".*[\t\r\n].*")) {
+            log.warn("Podcast {} of feed {} failed and is not retried: {}", guid, feedId, String.valueOf(failure));
+            return;
+        }
+        DeadLetter previous = poll.retries.get(guid);
+        int attempts = previous != null ? previous.attempts + 1 : 1;
+        poll.failed.put(guid, new DeadLetter(attempts, new FeedItem(guid, exchange.getMessage().getHeader("publicationDate", String.class),
+                exchange.getMessage().getHeader("enclosureUrl", String.class), exchange.getMessage().getHeader("enclosureLength", -1L, Long.class), null)));
+        log.warn("Podcast {} of feed {} failed {} poll(s) in a row, retried by the next poll: {}", guid, feedId, attempts, String.valueOf(failure));
+    }
+
+    // saved with the latest date once the feed has been processed; sets deadLetters to the number of episodes left to retry
+    public void save(Exchange exchange) throws IOException {
+        String feedId = exchange.getMessage().getHeader("feedId", String.class);
+        Poll poll = polls.remove(feedId);
+        if (poll == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        for (DeadLetter deadLetter : poll.failed.values()) {
+            FeedItem item = deadLetter.item;
+            lines.add(deadLetter.attempts + "\t" + item.getGuid() + '\t' + item.getPubDate() + '\t' + item.getEnclosureLength() + '\t'
+                    + (item.getEnclosureType() != null ? item.getEnclosureType() : "-") + '\t' + item.getEnclosureUrl());
+        }
+        feedStateStore.writeDeadLetters(feedId, lines);
+        exchange.setProperty("deadLetters", lines.size());
+    }
+
+    private static class Poll {
+        final Map<String, DeadLetter> retries;
+        final ConcurrentMap<String, DeadLetter> failed = new ConcurrentHashMap<>();
+
+        Poll(Map<String, DeadLetter> retries) {
+            this.retries = retries;
+        }
+    }
+
+    private static class DeadLetter {
+        final int attempts;
+        final FeedItem item;
+
+        DeadLetter(int attempts, FeedItem item) {
+            this.attempts = attempts;
+            this.item = item;
+        }
+    }
+
+    // the feed's items, then the dead letters the feed did not list this time
+    private static class RetryingIterator implements Iterator<FeedItem>, Closeable {
+        private final Iterator<FeedItem> items;
+        private final Iterator<DeadLetter> retries;
+        private final Set<String> seenGuids = new HashSet<>();
+        private FeedItem next;
+
+        RetryingIterator(Iterator<FeedItem> items, Map<String, DeadLetter> retries) {
+            this.items = items;
+            this.retries = retries.values().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && items.hasNext()) {
+                next = items.next();
+                if (next.getGuid() != null) {
+                    seenGuids.add(next.getGuid());
+                }
+            }
+            while (next == null && retries.hasNext()) {
+                FeedItem retry = retries.next().item;
+                if (!seenGuids.contains(retry.getGuid())) {
+                    next = retry;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public FeedItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FeedItem item = next;
+            next = null;
+            return item;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (items instanceof Closeable) {
+                ((Closeable) items).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.podcast;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.language.simple.Simple;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+// Decides which suitable episode is downloaded next. Episodes wait in a priority queue, feeds with a higher
+// downloadWeight first and the newest episode first within a weight, and start while fewer than maxConcurrentDownloads
+// run and their host is below maxDownloadsPerHost. A waiting episode is a queued callback, not a parked thread, so
+// neither a retry handed in by the redelivery timer nor a download completing ever waits here. Backpressure is applied
+// to the feed items instead: while downloadQueueSize episodes wait, the feed reader asking for the next item is held
+// back, so the streaming splitter stops parsing the feed until the queue drains.
+@Component
+public class DownloadScheduler extends AsyncProcessorSupport {
+    private static final Comparator<Pending> Priority = Comparator.comparingInt((Pending pending) -> pending.weight).reversed()
+            .thenComparing(Comparator.comparingLong((Pending pending) -> pending.publicationMillis).reversed())
+            .thenComparingLong(pending -> pending.sequence);
+
+    private final TreeSet<Pending> queue = new TreeSet<>(Priority);
+
+    private HostConcurrencyLimiter hostConcurrencyLimiter;
+    private int maxConcurrentDownloads;
+    private int downloadQueueSize;
+    private int running;
+    private long sequence;
+
+    @Autowired
+    public DownloadScheduler(HostConcurrencyLimiter hostConcurrencyLimiter, @Value("${maxConcurrentDownloads}") int maxConcurrentDownloads,
+                             @Value("${downloadQueueSize}") int downloadQueueSize) {
+        this.hostConcurrencyLimiter = hostConcurrencyLimiter;
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        this.downloadQueueSize = downloadQueueSize;
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        Integer weight = exchange.getMessage().getHeader("downloadWeight", Integer.class);
+        Pending pending = new Pending(callback, exchange.getMessage().getHeader("enclosureUrl", String.class), weight != null ? weight : 1,
+                Rfc822DateParser.parseMillis(exchange.getMessage().getHeader("publicationDate", String.class)));
+        List<Pending> started = submit(pending);
+        boolean startedNow = started.remove(pending);
+        resume(started);
+        if (startedNow) {
+            callback.done(true);
+        }
+        return startedNow;
+    }
+
+    public void release(@Simple("${header.enclosureUrl}") String url) {
+        List<Pending> started;
+        synchronized (this) {
+            running--;
+            hostConcurrencyLimiter.release(url);
+            started = startDue();
+        }
+        resume(started);
+    }
+
+    public synchronized int queueSize() {
+        return queue.size();
+    }
+
+    // the feed items of a parallel split, handed out only while the download queue has room
+    public <T> Iterator<T> admit(Iterator<T> items) {
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                awaitRoom();
+                return items.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return items.next();
+            }
+        };
+    }
+
+    private synchronized void awaitRoom() {
+        try {
+            while (queue.size() >= downloadQueueSize) {
+                wait();
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt(); // the feed is read on, the route is stopping
+        }
+    }
+
+    private synchronized List<Pending> submit(Pending pending) {
+        pending.sequence = sequence++;
+        queue.add(pending);
+        return startDue();
+    }
+
+    // takes the episodes that may start now in priority order, an episode whose host is busy does not block the ones behind it
+    private List<Pending> startDue() {
+        List<Pending> started = new ArrayList<>();
+        for (Iterator<Pending> waiting = queue.iterator(); waiting.hasNext() && running < maxConcurrentDownloads; ) {
+            Pending pending = waiting.next();
+            if (hostConcurrencyLimiter.tryAcquire(pending.url)) {
+                waiting.remove();
+                running++;
+                started.add(pending);
+            }
+        }
+        if (!started.isEmpty()) {
+            notifyAll();
+        }
+        return started;
+    }
+
+    // continues the routes of started episodes outside the lock
+    private static void resume(List<Pending> started) {
+        for (Pending pending : started) {
+            pending.callback.done(false);
+        }
+    }
+
+    private static class Pending {
+        final AsyncCallback callback;
+        final String url;
+        final int weight;
+        final long publicationMillis;
+        long sequence;
+
+        Pending(AsyncCallback callback, String url, int weight, long publicationMillis) {
+            this.callback = callback;
+            this.url = url;
+            this.weight = weight;
+            this.publicationMillis = publicationMillis;
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package com.example.podcast;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Downloads run on the non-blocking java.net.http client: no thread waits for a slow server, the route goes on
+// from the client's executor once the episode is in the work file.
+@Component
+public class EpisodeDownloader extends AsyncProcessorSupport {
+    private static final Pattern ContentRangePattern = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private Path workFolder;
+    private Duration readTimeout;
+    private long rangeDownloadThreshold;
+    private int rangeDownloadSegments;
+    private BandwidthLimiter bandwidthLimiter;
+    private SharedHttpClient httpClient;
+    private ScheduledExecutorService timer;
+
+    @Autowired
+    public EpisodeDownloader(@Value("${workFolder}") String workFolder, @Value("${readTimeoutMillis}") int readTimeoutMillis,
+                             @Value("${rangeDownloadThreshold}") long rangeDownloadThreshold, @Value("${rangeDownloadSegments}") int rangeDownloadSegments,
+                             BandwidthLimiter bandwidthLimiter, SharedHttpClient httpClient) {
+        this.workFolder = Paths.get(workFolder);
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.rangeDownloadThreshold = rangeDownloadThreshold;
+        this.rangeDownloadSegments = rangeDownloadSegments;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.httpClient = httpClient;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "EpisodeDownloadTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        downloadAsync(exchange).whenComplete((result, failure) -> {
+            if (failure != null) {
+                exchange.setException(AsyncHttp.unwrap(failure));
+            }
+            callback.done(false);
+        });
+        return false;
+    }
+
+    public void download(Exchange exchange) throws Exception {
+        try {
+            downloadAsync(exchange).get();
+        } catch (ExecutionException exc) {
+            Throwable failure = AsyncHttp.unwrap(exc);
+            throw failure instanceof Exception ? (Exception) failure : exc;
+        }
+    }
+
+    // streams the enclosure into a .part work file and resumes it with Range requests after a crash or a dropped connection,
+    // hashing it on the way for the episode store which then moves the completed work file into its blob folder
+    public CompletableFuture<Void> downloadAsync(Exchange exchange) {
+        try {
+            String url = exchange.getMessage().getHeader("enclosureUrl", String.class);
+            Path workFile = workFolder.resolve(exchange.getMessage().getHeader("feedId", String.class))
+                    .resolve(exchange.getMessage().getHeader(Exchange.FILE_NAME, String.class) + ".part");
+            Files.createDirectories(workFile.getParent());
+
+            Path stateFile = workFile.resolveSibling(workFile.getFileName() + ".state");
+            Properties state = loadState(stateFile);
+            long announcedLength = exchange.getMessage().getHeader("enclosureLength", -1L, Long.class);
+            boolean fresh = state.isEmpty() && !Files.exists(workFile);
+            Transfer transfer = new Transfer(fresh ? exchange.getMessage().getHeader("knownEnclosureETag", String.class) : null);
+            CompletableFuture<Properties> plan;
+            if (fresh && (announcedLength <= 0 || announcedLength >= rangeDownloadThreshold)) {
+                // only episodes announced as large, or of unknown size, are worth the extra request
+                plan = planDownload(url, transfer).thenApply(planned -> {
+                    saveState(stateFile, planned);
+                    return planned;
+                });
+            } else {
+                plan = CompletableFuture.completedFuture(state);
+            }
+
+            return plan.thenCompose(planned -> transfer.notModified ? CompletableFuture.<Void>completedFuture(null)
+                    : transfer(url, workFile, stateFile, planned, transfer)).thenRun(() -> {
+                deleteIfExists(stateFile);
+                exchange.setProperty("downloadedBytes", transfer.bytes.get());
+                if (transfer.firstResponseNanos.get() >= 0) {
+                    exchange.setProperty("timeToFirstByteNanos", transfer.firstResponseNanos.get());
+                    exchange.setProperty("enclosureRequested", true); // the host answered
+                }
+                if (transfer.notModified) { // the enclosure is the one stored under its known ETag
+                    exchange.getMessage().setHeader("contentHash", exchange.getMessage().getHeader("knownContentHash"));
+                    exchange.setProperty("contentKnown", true);
+                    return;
+                }
+                exchange.getMessage().setBody(workFile.toFile());
+                exchange.getMessage().setHeader(Exchange.FILE_LOCAL_WORK_PATH, workFile.toFile());
+                try {
+                    // only a download resumed with nothing left to fetch is not hashed by now
+                    exchange.getMessage().setHeader("contentHash", transfer.contentHash != null ? transfer.contentHash : EpisodeStore.contentHash(workFile));
+                } catch (IOException exc) {
+                    throw new UncheckedIOException(exc);
+                }
+                if (transfer.eTag != null) {
+                    exchange.getMessage().setHeader("enclosureETag", transfer.eTag);
+                }
+            });
+        } catch (IOException | RuntimeException exc) {
+            return CompletableFuture.failedFuture(exc);
+        }
+    }
+
+    private CompletableFuture<Void> transfer(String url, Path workFile, Path stateFile, Properties state, Transfer transfer) {
+        int segments = Integer.parseInt(state.getProperty("segments", "1"));
+        CompletableFuture<Void> transferred;
+        if (segments > 1) {
+            transferred = downloadSegments(url, workFile, state, segments, transfer);
+        } else {
+            transfer.digest = EpisodeStore.newDigest();
+            transferred = downloadRange(url, workFile, 0, -1, state.getProperty("validator"), transfer, validator -> {
+                if (validator != null && !validator.equals(state.getProperty("validator"))) {
+                    state.setProperty("validator", validator); // for the If-Range of a resumed download
+                    saveState(stateFile, state);
+                }
+            });
+        }
+        return transferred.whenComplete((result, failure) -> {
+            if (failure != null && AsyncHttp.unwrap(failure) instanceof EnclosureChangedException) {
+                // the bytes already fetched belong to another version of the episode, the next attempt starts from scratch
+                try {
+                    for (int i = 0; i < segments; i++) {
+                        Files.deleteIfExists(workFile.resolveSibling(workFile.getFileName() + "." + i));
+                    }
+                    Files.deleteIfExists(workFile);
+                    Files.deleteIfExists(stateFile);
+                } catch (IOException exc) {
+                    failure.addSuppressed(exc);
+                }
+            }
+        });
+    }
+
+    // asks for the first byte only to learn the length, the validator and whether the server serves byte ranges
+    private CompletableFuture<Properties> planDownload(String url, Transfer transfer) {
+        if (rangeDownloadSegments < 2) {
+            return CompletableFuture.completedFuture(new Properties());
+        }
+        HttpRequest.Builder request = request(url).header("Range", "bytes=0-0");
+        if (transfer.knownETag != null) {
+            request.header("If-None-Match", transfer.knownETag);
+        }
+        return httpClient.sendAsync(request.build(), response -> response.statusCode() == 206 ? HttpResponse.BodySubscribers.discarding() : AsyncHttp.cancelling(null))
+                .thenApply(response -> {
+                    if (response.statusCode() == 304 && transfer.knownETag != null) {
+                        transfer.responded();
+                        transfer.notModified = true;
+                        return new Properties();
+                    }
+                    if (response.statusCode() != 416) { // an empty episode has no first byte
+                        try {
+                            checkStatus(url, response.statusCode(), response.headers());
+                        } catch (HttpOperationFailedException exc) {
+                            throw new CompletionException(exc);
+                        }
+                    }
+                    transfer.responded();
+                    transfer.eTag = response.headers().firstValue("ETag").orElse(null);
+                    Properties state = new Properties();
+                    String validator = validatorOf(response.headers());
+                    if (validator != null) {
+                        state.setProperty("validator", validator);
+                    }
+                    Matcher contentRange = ContentRangePattern.matcher(response.headers().firstValue("Content-Range").orElse(""));
+                    if (response.statusCode() == 206 && contentRange.matches() && !"*".equals(contentRange.group(3))) {
+                        long length = Long.parseLong(contentRange.group(3));
+                        if (length >= rangeDownloadThreshold) {
+                            state.setProperty("length", Long.toString(length));
+                            state.setProperty("segments", Integer.toString(rangeDownloadSegments));
+                        }
+                    }
+                    return state;
+                });
+    }
+
+    // every segment goes to its own file whose size tells how far it got, so a restart only fetches the missing bytes
+    private CompletableFuture<Void> downloadSegments(String url, Path workFile, Properties state, int segments, Transfer transfer) {
+        long length = Long.parseLong(state.getProperty("length"));
+        String validator = state.getProperty("validator");
+        long segmentLength = (length + segments - 1) / segments;
+
+        List<CompletableFuture<Void>> downloads = new ArrayList<>();
+        List<Path> segmentFiles = new ArrayList<>();
+        for (int i = 0; i < segments; i++) {
+            long start = i * segmentLength;
+            long end = Math.min(length, start + segmentLength) - 1;
+            Path segmentFile = workFile.resolveSibling(workFile.getFileName() + "." + i);
+            segmentFiles.add(segmentFile);
+            downloads.add(downloadRange(url, segmentFile, start, end, validator, transfer, null));
+        }
+
+        // the segments arrive out of order, they are hashed while they are joined
+        return CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            MessageDigest digest = EpisodeStore.newDigest();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            try (FileChannel out = FileChannel.open(workFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Path segmentFile : segmentFiles) {
+                    try (FileChannel in = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+                        while (in.read(buffer) >= 0) {
+                            buffer.flip();
+                            digest.update(buffer.duplicate());
+                            while (buffer.hasRemaining()) {
+                                out.write(buffer);
+                            }
+                            buffer.clear();
+                        }
+                    }
+                }
+                transfer.contentHash = EpisodeStore.hex(digest.digest());
+                for (Path segmentFile : segmentFiles) {
+                    Files.delete(segmentFile);
+                }
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+        });
+    }
+
+    // fetches bytes start..end (end = -1 up to the end) into the file, continuing after the bytes it already holds
+    private CompletableFuture<Void> downloadRange(String url, Path file, long start, long end, String validator, Transfer transfer,
+                                                  ValidatorListener validatorListener) {
+        long existing;
+        try {
+            existing = Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException exc) {
+            return CompletableFuture.failedFuture(exc);
+        }
+        if (end >= 0 && start + existing > end) {
+            return CompletableFuture.completedFuture(null); // the segment is complete
+        }
+        HttpRequest.Builder request = request(url);
+        boolean conditional = transfer.knownETag != null && existing == 0 && start == 0 && end < 0;
+        if (conditional) {
+            request.header("If-None-Match", transfer.knownETag);
+        }
+        if (existing > 0 || end >= 0) {
+            request.header("Range", "bytes=" + (start + existing) + "-" + (end >= 0 ? Long.toString(end) : ""));
+            if (validator != null) {
+                request.header("If-Range", validator); // the whole, changed episode comes back if it is not the same file anymore
+            }
+        }
+
+        return httpClient.sendAsync(request.build(), response -> {
+            int status = response.statusCode();
+            if (status == 416 && end < 0) {
+                transfer.responded();
+                return AsyncHttp.cancelling(null); // nothing left after the bytes already in the work file
+            }
+            if (status == 304 && conditional) {
+                transfer.responded();
+                transfer.notModified = true;
+                return AsyncHttp.cancelling(null);
+            }
+            try {
+                checkStatus(url, status, response.headers());
+                transfer.responded();
+                if (end < 0) {
+                    transfer.eTag = response.headers().firstValue("ETag").orElse(null);
+                }
+                boolean partial = status == 206;
+                if (partial) {
+                    String contentRangeHeader = response.headers().firstValue("Content-Range").orElse(null);
+                    Matcher contentRange = ContentRangePattern.matcher(String.valueOf(contentRangeHeader));
+                    if (!contentRange.matches() || Long.parseLong(contentRange.group(1)) != start + existing) {
+                        throw new IOException("Unexpected Content-Range " + contentRangeHeader + " from " + url);
+                    }
+                } else if (start > 0 || end >= 0) {
+                    throw new EnclosureChangedException("Server returned the whole episode instead of a range of " + url);
+                }
+                if (validatorListener != null) {
+                    validatorListener.accept(validatorOf(response.headers()));
+                }
+                // a full response replaces what is in the work file, a single stream is hashed as it arrives
+                return new FileBodySubscriber(url, file, partial ? existing : 0, transfer, end < 0 ? transfer.digest : null);
+            } catch (IOException | HttpOperationFailedException exc) {
+                return AsyncHttp.failing(exc);
+            }
+        }).thenApply(HttpResponse::body);
+    }
+
+    private HttpRequest.Builder request(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(readTimeout).GET();
+    }
+
+    private static void checkStatus(String url, int status, HttpHeaders headers) throws HttpOperationFailedException {
+        if (status < 200 || status >= 300) {
+            throw new HttpOperationFailedException(url, status, null, headers.firstValue("Location").orElse(null), AsyncHttp.firstValues(headers), null);
+        }
+    }
+
+    private static String validatorOf(HttpHeaders headers) {
+        String eTag = headers.firstValue("ETag").orElse(null);
+        return eTag != null && !eTag.startsWith("W/") ? eTag : headers.firstValue("Last-Modified").orElse(null);
+    }
+
+    // what a download took, for the metrics, and what it found out about the enclosure
+    private static class Transfer {
+        final long startNanos = System.nanoTime();
+        final AtomicLong firstResponseNanos = new AtomicLong(-1);
+        final AtomicLong bytes = new AtomicLong();
+        final String knownETag;
+        volatile boolean notModified;
+        volatile String eTag;
+        volatile MessageDigest digest;
+        volatile String contentHash;
+
+        Transfer(String knownETag) {
+            this.knownETag = knownETag;
+        }
+
+        void responded() {
+            firstResponseNanos.compareAndSet(-1, System.nanoTime() - startNanos);
+        }
+    }
+
+    // writes the body into the file as it arrives and gives up when no data has come for the read timeout,
+    // asks for more data only once the bandwidth limits allow it
+    private class FileBodySubscriber implements HttpResponse.BodySubscriber<Void> {
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final String url;
+        private final FileChannel out;
+        private final Transfer transfer;
+        private final MessageDigest digest;
+        private final ScheduledFuture<?> idleCheck;
+        private volatile Flow.Subscription subscription;
+        private volatile long lastDataNanos = System.nanoTime();
+        private long position;
+
+        FileBodySubscriber(String url, Path file, long position, Transfer transfer, MessageDigest digest) throws IOException {
+            this.url = url;
+            this.out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.out.truncate(position);
+            this.position = position;
+            this.transfer = transfer;
+            this.digest = digest;
+            if (digest != null) {
+                digest.reset();
+                // a resumed download reads the bytes it already holds once
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+                for (long read = 0; read < position; buffer.clear()) {
+                    int count = out.read(buffer, read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
+                    buffer.flip();
+                    digest.update(buffer);
+                }
+            }
+            long checkMillis = Math.max(1, readTimeout.toMillis() / 4);
+            this.idleCheck = timer.scheduleWithFixedDelay(this::checkIdle, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public CompletableFuture<Void> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            try {
+                long received = 0;
+                for (ByteBuffer buffer : buffers) {
+                    if (digest != null) {
+                        digest.update(buffer.duplicate());
+                    }
+                    while (buffer.hasRemaining()) {
+                        int written = out.write(buffer, position);
+                        position += written;
+                        received += written;
+                    }
+                }
+                transfer.bytes.addAndGet(received);
+                long pause = bandwidthLimiter.pauseNanos(url, received);
+                lastDataNanos = System.nanoTime() + pause; // a paused transfer is not idle
+                if (pause > 0) {
+                    timer.schedule(() -> subscription.request(1), pause, TimeUnit.NANOSECONDS);
+                } else {
+                    subscription.request(1);
+                }
+            } catch (IOException exc) {
+                subscription.cancel();
+                finish(exc);
+            }
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            finish(failure);
+        }
+
+        @Override
+        public void onComplete() {
+            finish(null);
+        }
+
+        private void checkIdle() {
+            if (System.nanoTime() - lastDataNanos > readTimeout.toNanos()) {
+                Flow.Subscription subscription = this.subscription;
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+                finish(new HttpTimeoutException("No data received for " + readTimeout.toMillis() + " ms"));
+            }
+        }
+
+        private void finish(Throwable failure) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            idleCheck.cancel(false);
+            try {
+                out.close();
+            } catch (IOException exc) {
+                if (failure == null) {
+                    failure = exc;
+                } else {
+                    failure.addSuppressed(exc);
+                }
+            }
+            if (failure == null) {
+                if (digest != null) {
+                    transfer.contentHash = EpisodeStore.hex(digest.digest());
+                }
+                result.complete(null);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private interface ValidatorListener {
+        void accept(String validator) throws IOException;
+    }
+
+    private static class EnclosureChangedException extends IOException {
+        EnclosureChangedException(String message) {
+            super(message);
+        }
+    }
+
+    private static Properties loadState(Path stateFile) throws IOException {
+        Properties state = new Properties();
+        if (Files.exists(stateFile)) {
+            try (InputStream in = Files.newInputStream(stateFile)) {
+                state.load(in);
+            }
+        }
+        return state;
+    }
+
+    private static void saveState(Path stateFile, Properties state) {
+        try (OutputStream out = Files.newOutputStream(stateFile)) {
+            state.store(out, null);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    private static void deleteIfExists(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+}
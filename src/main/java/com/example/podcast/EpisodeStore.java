@@ -0,0 +1,235 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Content addressed episode storage: every distinct episode is kept once under blobFolder by the SHA-256 of its bytes
+// and hard linked into the destination folders of the feeds that carry it. The enclosures stored so far are indexed
+// by url in stateFolder/enclosures.txt, an enclosure seen before is not downloaded again. The index is appended to as
+// episodes are stored and rewritten with only the latest line of each url at startup.
+@Component
+public class EpisodeStore {
+    private static final Logger log = LoggerFactory.getLogger(EpisodeStore.class);
+    private static final char[] HexDigits = "0123456789abcdef".toCharArray();
+
+    private final ConcurrentMap<String, StoredEnclosure> enclosures = new ConcurrentHashMap<>();
+    private Path blobFolder;
+    private Path indexFile;
+
+    @Autowired
+    public EpisodeStore(@Value("${blobFolder}") String blobFolder, @Value("${stateFolder}") String stateFolder) throws IOException {
+        this(Paths.get(blobFolder), Paths.get(stateFolder).resolve("enclosures.txt"));
+    }
+
+    EpisodeStore(Path blobFolder, Path indexFile) throws IOException {
+        this.blobFolder = blobFolder;
+        this.indexFile = indexFile;
+        if (Files.exists(indexFile)) {
+            // hash, length, ETag or -, url; later lines win
+            List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] fields = line.split("\t", 4);
+                if (fields.length == 4) {
+                    enclosures.put(fields[3], new StoredEnclosure(fields[0], Long.parseLong(fields[1]), "-".equals(fields[2]) ? null : fields[2]));
+                }
+            }
+            if (lines.size() > enclosures.size()) {
+                compact();
+            }
+        }
+    }
+
+    // an enclosure of the announced length under a known url is taken from the store, one whose length is not announced
+    // is asked for with the ETag it was stored under
+    public void findKnown(Exchange exchange) {
+        String url = exchange.getMessage().getHeader("enclosureUrl", String.class);
+        StoredEnclosure known = url != null ? enclosures.get(url) : null;
+        if (known == null || !Files.exists(blobOf(known.hash))) {
+            return;
+        }
+        long length = exchange.getMessage().getHeader("enclosureLength", -1L, Long.class);
+        if (length > 0 && length == known.length) {
+            exchange.getMessage().setHeader("contentHash", known.hash);
+            exchange.setProperty("contentKnown", true);
+        } else if (known.eTag != null) {
+            exchange.getMessage().setHeader("knownEnclosureETag", known.eTag);
+            exchange.getMessage().setHeader("knownContentHash", known.hash);
+        }
+    }
+
+    // moves a downloaded work file into the blob folder, unless the same bytes are stored already, and links it into the feed's folder
+    public void store(Exchange exchange) throws IOException {
+        String hash = exchange.getMessage().getHeader("contentHash", String.class);
+        File workFile = exchange.getMessage().getBody(File.class);
+        if (hash == null) {
+            if (workFile == null) {
+                throw new IllegalArgumentException("Episode " + exchange.getMessage().getHeader(Exchange.FILE_NAME) + " was neither downloaded nor found in the store");
+            }
+            hash = contentHash(workFile.toPath());
+        }
+        Path blob = blobOf(hash);
+        long length;
+        if (workFile != null && !Boolean.TRUE.equals(exchange.getProperty("contentKnown", Boolean.class))) {
+            length = workFile.length();
+            if (Files.exists(blob)) {
+                Files.delete(workFile.toPath()); // the same episode came under another feed, guid or url
+            } else {
+                moveToBlob(workFile.toPath(), blob);
+            }
+        } else {
+            length = Files.size(blob);
+        }
+
+        Path destination = Paths.get(exchange.getMessage().getHeader("destFolder", String.class), exchange.getMessage().getHeader(Exchange.FILE_NAME, String.class));
+        link(blob, destination);
+        String url = exchange.getMessage().getHeader("enclosureUrl", String.class);
+        if (url != null) {
+            record(url, new StoredEnclosure(hash, length, exchange.getMessage().getHeader("enclosureETag", String.class)));
+        }
+    }
+
+    private static void moveToBlob(Path workFile, Path blob) throws IOException {
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.move(workFile, blob, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exc) {
+            // the work folder is on another file system than the blobs, a blob must still never be seen half written
+            Path tmp = blob.resolveSibling(blob.getFileName() + ".tmp");
+            Files.copy(workFile, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(workFile);
+        }
+    }
+
+    private static void link(Path blob, Path destination) throws IOException {
+        Files.createDirectories(destination.getParent());
+        if (Files.exists(destination)) {
+            if (Files.isSameFile(blob, destination)) {
+                return;
+            }
+            Files.delete(destination);
+        }
+        try {
+            Files.createLink(destination, blob);
+        } catch (UnsupportedOperationException | FileSystemException exc) {
+            // e.g. the destination folder is on another file system than the blobs
+            log.warn("Cannot link {} to {}, copying it: {}", destination, blob, exc.toString());
+            Path tmp = destination.resolveSibling(destination.getFileName() + ".tmp");
+            Files.copy(blob, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private synchronized void record(String url, StoredEnclosure enclosure) throws IOException {
+        StoredEnclosure previous = enclosures.get(url);
+        if (previous != null && enclosure.eTag == null && previous.hash.equals(enclosure.hash)) {
+            enclosure = previous; // taken from the store by its length, the ETag it was fetched with still holds
+        }
+        if (enclosure.equals(previous)) {
+            return;
+        }
+        enclosures.put(url, enclosure);
+        Files.createDirectories(indexFile.getParent());
+        try (Writer out = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            write(out, url, enclosure);
+        }
+    }
+
+    // replaces the index atomically by one line per url, so urls stored again and again do not grow it
+    private void compact() throws IOException {
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, StoredEnclosure> enclosure : enclosures.entrySet()) {
+                write(out, enclosure.getKey(), enclosure.getValue());
+            }
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void write(Writer out, String url, StoredEnclosure enclosure) throws IOException {
+        out.write(enclosure.hash + '\t' + enclosure.length + '\t' + (enclosure.eTag != null ? enclosure.eTag : "-") + '\t' + url + '\n');
+    }
+
+    Path blobOf(String hash) {
+        return blobFolder.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    static String contentHash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int read; (read = in.read(buffer)) >= 0; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    static String hex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HexDigits[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HexDigits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static class StoredEnclosure {
+        final String hash;
+        final long length;
+        final String eTag;
+
+        StoredEnclosure(String hash, long length, String eTag) {
+            this.hash = hash;
+            this.length = length;
+            this.eTag = eTag;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof StoredEnclosure)) {
+                return false;
+            }
+            StoredEnclosure that = (StoredEnclosure) other;
+            return hash.equals(that.hash) && length == that.length && Objects.equals(eTag, that.eTag);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.podcast;
+
+import java.time.Duration;
+
+public class Feed {
+    private String id;
+    private String url;
+    private String destFolder;
+    private Duration pollInterval;
+    private Integer downloadWeight;
+
+    public String getId() { return id; }
+
+    public void setId(String id) { this.id = id; }
+
+    public String getUrl() { return url; }
+
+    public void setUrl(String url) { this.url = url; }
+
+    public String getDestFolder() { return destFolder; }
+
+    public void setDestFolder(String destFolder) { this.destFolder = destFolder; }
+
+    public Duration getPollInterval() { return pollInterval; }
+
+    public void setPollInterval(Duration pollInterval) { this.pollInterval = pollInterval; }
+
+    public Integer getDownloadWeight() { return downloadWeight; }
+
+    public void setDownloadWeight(Integer downloadWeight) { this.downloadWeight = downloadWeight; }
+
+    @Override
+    public String toString() {
+        return "Feed[" + id + ", " + url + "]";
+    }
+}
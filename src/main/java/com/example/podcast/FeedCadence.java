@@ -0,0 +1,233 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.language.simple.Simple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Learns when a feed publishes and sets the delay until its next poll. A feed is polled every minPollInterval
+// while a new episode is due, judging by the median gap between its latest publications, and sleeps until then
+// otherwise; a feed overdue for long backs off towards maxPollInterval. The channel's <ttl> and the Cache-Control
+// max-age of the response are never undercut, polls falling into <skipHours> move past them, and a random jitter
+// keeps feeds with the same cadence apart.
+@Component
+public class FeedCadence {
+    private static final Logger log = LoggerFactory.getLogger(FeedCadence.class);
+    private static final int HistorySize = 16;
+    private static final Pattern MaxAgePattern = Pattern.compile("(?:^|[,\\s])max-age\\s*=\\s*(\\d+)");
+
+    private final ConcurrentMap<String, FeedHistory> histories = new ConcurrentHashMap<>();
+
+    private FeedStateStore feedStateStore;
+    private boolean adaptivePolling;
+    private long minPollMillis;
+    private long maxPollMillis;
+    private double pollJitter;
+
+    @Autowired
+    public FeedCadence(FeedStateStore feedStateStore, @Value("${adaptivePolling}") boolean adaptivePolling,
+                       @Value("${minPollInterval}") Duration minPollInterval, @Value("${maxPollInterval}") Duration maxPollInterval,
+                       @Value("${pollJitter}") double pollJitter) {
+        this.feedStateStore = feedStateStore;
+        this.adaptivePolling = adaptivePolling;
+        this.minPollMillis = minPollInterval.toMillis();
+        this.maxPollMillis = maxPollInterval.toMillis();
+        this.pollJitter = pollJitter;
+    }
+
+    // keeps the caching hint of the feed response and removes it from the headers
+    public void cacheHints(Exchange exchange) {
+        Object cacheControl = exchange.getMessage().removeHeader("Cache-Control");
+        FeedHistory history = historyOf(exchange.getMessage().getHeader("feedId", String.class));
+        synchronized (history) {
+            history.maxAgeMillis = maxAgeMillis(cacheControl instanceof String ? (String) cacheControl : null);
+        }
+    }
+
+    // records the publication dates of the items as the splitter reads them, and the channel hints once it is through
+    public Iterator<FeedItem> observe(@Simple("${header.feedId}") String feedId, Iterator<FeedItem> items) {
+        return new ObservingIterator(items, historyOf(feedId));
+    }
+
+    // sets nextPollDelayMillis for the feed scheduler, a failed poll keeps the configured poll interval
+    public void pollCompleted(Exchange exchange) {
+        if (!adaptivePolling || exchange.getException() != null || exchange.getProperty(Exchange.EXCEPTION_CAUGHT) != null) {
+            return;
+        }
+        String feedId = exchange.getMessage().getHeader("feedId", String.class);
+        FeedHistory history = historyOf(feedId);
+        long[] publications;
+        long hintMillis;
+        int skipHoursMask;
+        synchronized (history) {
+            if (history.changed) {
+                try {
+                    feedStateStore.writePublishHistory(feedId, Arrays.copyOf(history.publications, history.count));
+                } catch (IOException exc) {
+                    log.warn("Publish history of feed {} cannot be saved, keeping its poll interval: {}", feedId, String.valueOf(exc));
+                    return; // written again after the next poll
+                }
+                history.changed = false;
+            }
+            publications = Arrays.copyOf(history.publications, history.count);
+            hintMillis = Math.max(history.ttlMillis, history.maxAgeMillis);
+            skipHoursMask = history.skipHoursMask;
+        }
+        long nowMillis = System.currentTimeMillis();
+        long delay = nextPollDelayMillis(publications, nowMillis, minPollMillis, maxPollMillis);
+        if (delay < 0) {
+            return; // too little history, the configured poll interval stays
+        }
+        delay = Math.max(delay, Math.min(hintMillis, maxPollMillis));
+        delay = (long) (delay * (1 + pollJitter * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+        exchange.setProperty("nextPollDelayMillis", skipHours(nowMillis + delay, skipHoursMask) - nowMillis);
+    }
+
+    // -1 while fewer than 3 publications are known
+    static long nextPollDelayMillis(long[] publications, long nowMillis, long minPollMillis, long maxPollMillis) {
+        if (publications.length < 3) {
+            return -1;
+        }
+        long[] gaps = new long[publications.length - 1];
+        for (int i = 0; i < gaps.length; i++) {
+            gaps[i] = publications[i] - publications[i + 1];
+        }
+        Arrays.sort(gaps);
+        long gap = Math.max(gaps[gaps.length / 2], minPollMillis);
+        long latest = publications[0];
+
+        long windowOpens = latest + gap - gap / 4; // polls get frequent a quarter of a gap before the next episode is due
+        long delay;
+        if (nowMillis < windowOpens) {
+            delay = windowOpens - nowMillis;
+        } else if (nowMillis < latest + 2 * gap) {
+            delay = minPollMillis;
+        } else {
+            delay = (nowMillis - latest) / 8; // overdue, the feed may have gone quiet
+        }
+        return Math.max(minPollMillis, Math.min(delay, maxPollMillis));
+    }
+
+    // moves the time past the skip hours (GMT) it falls into
+    static long skipHours(long timeMillis, int skipHoursMask) {
+        long hourMillis = Duration.ofHours(1).toMillis();
+        for (int i = 0; i < 24 && (skipHoursMask & 1 << (int) (timeMillis / hourMillis % 24)) != 0; i++) {
+            timeMillis = (timeMillis / hourMillis + 1) * hourMillis;
+        }
+        return timeMillis;
+    }
+
+    static long maxAgeMillis(String cacheControl) {
+        if (cacheControl == null) {
+            return 0;
+        }
+        Matcher maxAge = MaxAgePattern.matcher(cacheControl.toLowerCase());
+        return maxAge.find() ? Math.min(Long.parseLong(maxAge.group(1)), Integer.MAX_VALUE) * 1000 : 0;
+    }
+
+    private FeedHistory historyOf(String feedId) {
+        return histories.computeIfAbsent(feedId, id -> {
+            try {
+                return new FeedHistory(feedStateStore.readPublishHistory(id));
+            } catch (IOException | NumberFormatException exc) {
+                return new FeedHistory(new long[0]); // relearned from the next polls
+            }
+        });
+    }
+
+    // the latest distinct publication times, newest first
+    private static class FeedHistory {
+        final long[] publications = new long[HistorySize];
+        int count;
+        boolean changed;
+        long ttlMillis;
+        long maxAgeMillis;
+        int skipHoursMask;
+
+        FeedHistory(long[] stored) {
+            for (long publication : stored) {
+                add(publication);
+            }
+            changed = false;
+        }
+
+        void add(long publication) {
+            int i = 0;
+            while (i < count && publications[i] > publication) {
+                i++;
+            }
+            if ((i < count && publications[i] == publication) || i == HistorySize) {
+                return; // known, or older than the whole history
+            }
+            System.arraycopy(publications, i, publications, i + 1, Math.min(count, HistorySize - 1) - i);
+            publications[i] = publication;
+            count = Math.min(count + 1, HistorySize);
+            changed = true;
+        }
+    }
+
+    private static class ObservingIterator implements Iterator<FeedItem>, Closeable {
+        private final Iterator<FeedItem> items;
+        private final FeedHistory history;
+        private boolean finished;
+
+        ObservingIterator(Iterator<FeedItem> items, FeedHistory history) {
+            this.items = items;
+            this.history = history;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = items.hasNext();
+            if (!hasNext) {
+                finish();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public FeedItem next() {
+            FeedItem item = items.next();
+            long publication = Rfc822DateParser.parseMillis(item.getPubDate());
+            if (publication != Rfc822DateParser.Invalid) {
+                synchronized (history) {
+                    history.add(publication);
+                }
+            }
+            return item;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            if (items instanceof Closeable) {
+                ((Closeable) items).close();
+            }
+        }
+
+        private void finish() {
+            if (!finished && items instanceof FeedParser.FeedItemIterator) {
+                finished = true;
+                FeedParser.FeedItemIterator feedItems = (FeedParser.FeedItemIterator) items;
+                synchronized (history) {
+                    history.ttlMillis = Math.max(0, feedItems.getTtlMinutes()) * 60_000L;
+                    history.skipHoursMask = feedItems.getSkipHoursMask();
+                }
+            }
+        }
+    }
+}
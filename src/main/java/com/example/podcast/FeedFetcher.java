@@ -0,0 +1,104 @@
+package com.example.podcast;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+// Fetches http(s) feeds on the non-blocking java.net.http client, the poll thread is free while the server takes its time.
+// The conditional GET headers of the exchange go along, a 304 Not Modified sets the feedNotModified property.
+// The feed is read into a work file before it is parsed, so its host slot of the shared client is free again while
+// the episodes of the feed download.
+@Component
+public class FeedFetcher extends AsyncProcessorSupport {
+    private Path workFolder;
+    private Duration readTimeout;
+    private SharedHttpClient httpClient;
+
+    @Autowired
+    public FeedFetcher(@Value("${workFolder}") String workFolder, @Value("${readTimeoutMillis}") int readTimeoutMillis, SharedHttpClient httpClient) {
+        this.workFolder = Paths.get(workFolder);
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        String url = exchange.getMessage().getHeader("rssUrl", String.class);
+        HttpRequest request;
+        Path feedFile;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(readTimeout).GET();
+            for (String name : new String[]{"If-None-Match", "If-Modified-Since"}) {
+                String value = exchange.getMessage().getHeader(name, String.class);
+                if (value != null) {
+                    builder.header(name, value);
+                }
+            }
+            request = builder.build();
+            Files.createDirectories(workFolder);
+            feedFile = Files.createTempFile(workFolder, "feed-", ".rss");
+        } catch (RuntimeException | IOException exc) {
+            exchange.setException(exc);
+            callback.done(true);
+            return true;
+        }
+
+        // the body goes to disk rather than memory, it is parsed as a stream on the route
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofFile(feedFile)).whenComplete((response, failure) -> {
+            try {
+                if (failure != null) {
+                    delete(feedFile);
+                    exchange.setException(AsyncHttp.unwrap(failure));
+                } else {
+                    handle(exchange, url, response);
+                }
+            } catch (IOException exc) {
+                delete(feedFile);
+                exchange.setException(exc);
+            } finally {
+                callback.done(false);
+            }
+        });
+        return false;
+    }
+
+    private static void handle(Exchange exchange, String url, HttpResponse<Path> response) throws IOException {
+        int status = response.statusCode();
+        response.headers().firstValue("Cache-Control").ifPresent(cacheControl -> exchange.getMessage().setHeader("Cache-Control", cacheControl));
+        if (status == 304) {
+            delete(response.body());
+            exchange.setProperty("feedNotModified", true);
+        } else if (status < 200 || status >= 300) {
+            delete(response.body());
+            exchange.setException(new HttpOperationFailedException(url, status, null, response.headers().firstValue("Location").orElse(null),
+                    AsyncHttp.firstValues(response.headers()), null));
+        } else {
+            // getMessage(), an InOut exchange may already carry the out message the route goes on with
+            exchange.getMessage().setBody(Files.newInputStream(response.body(), StandardOpenOption.DELETE_ON_CLOSE)); // gone once parsed
+            response.headers().firstValue("ETag").ifPresent(eTag -> exchange.getMessage().setHeader("ETag", eTag));
+            response.headers().firstValue("Last-Modified").ifPresent(lastModified -> exchange.getMessage().setHeader("Last-Modified", lastModified));
+        }
+    }
+
+    private static void delete(Path feedFile) {
+        try {
+            Files.deleteIfExists(feedFile);
+        } catch (IOException exc) {
+            // a stale work file is all that is left
+        }
+    }
+}
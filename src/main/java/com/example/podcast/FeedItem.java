@@ -0,0 +1,32 @@
+package com.example.podcast;
+
+public class FeedItem {
+    private final String guid;
+    private final String pubDate;
+    private final String enclosureUrl;
+    private final long enclosureLength;
+    private final String enclosureType;
+
+    public FeedItem(String guid, String pubDate, String enclosureUrl, long enclosureLength, String enclosureType) {
+        this.guid = guid;
+        this.pubDate = pubDate;
+        this.enclosureUrl = enclosureUrl;
+        this.enclosureLength = enclosureLength;
+        this.enclosureType = enclosureType;
+    }
+
+    public String getGuid() { return guid; }
+
+    public String getPubDate() { return pubDate; }
+
+    public String getEnclosureUrl() { return enclosureUrl; }
+
+    public long getEnclosureLength() { return enclosureLength; }
+
+    public String getEnclosureType() { return enclosureType; }
+
+    @Override
+    public String toString() {
+        return "FeedItem[" + guid + ", " + pubDate + ", " + enclosureUrl + "]";
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.podcast;
+
+import org.apache.camel.Body;
+import org.apache.camel.Exchange;
+import org.apache.camel.RuntimeCamelException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+@Component
+public class FeedParser {
+    private final XMLInputFactory xmlInputFactory;
+    private boolean incrementalPolling;
+    private int fullScanEveryPolls;
+
+    public FeedParser() {
+        this(true, 24);
+    }
+
+    @Autowired
+    public FeedParser(@Value("${incrementalPolling}") boolean incrementalPolling, @Value("${fullScanEveryPolls}") int fullScanEveryPolls) {
+        this.incrementalPolling = incrementalPolling;
+        this.fullScanEveryPolls = fullScanEveryPolls;
+        xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    // Reads a feed known to list its items newest first only down to the items loaded before. A feed not seen in order
+    // yet is read in full, and so is every fullScanEveryPolls-th poll, to notice a feed which stopped being in order.
+    public Iterator<FeedItem> parse(@Body InputStream feed, Exchange exchange) {
+        int incrementalScans = exchange.getMessage().getHeader("incrementalScans", -1, Integer.class);
+        FeedItemIterator items = incrementalPolling && incrementalScans >= 0 && incrementalScans < fullScanEveryPolls
+                ? parse(feed, exchange.getMessage().getHeader("latestLoadedPodcastDate", String.class), exchange.getMessage().getHeader("guidCursor", String.class))
+                : parse(feed, null, null);
+        exchange.setProperty("feedScan", items); // tells the state store how far the feed was read
+        return items;
+    }
+
+    FeedItemIterator parse(InputStream feed, String needNewerThan, String guidCursor) {
+        try {
+            return new FeedItemIterator(xmlInputFactory.createXMLStreamReader(feed), feed, Rfc822DateParser.parseMillis(needNewerThan), guidCursor);
+        } catch (XMLStreamException exc) {
+            throw new RuntimeCamelException("Cannot read RSS feed", exc);
+        }
+    }
+
+    /**
+     * Reads rss/channel/item elements one at a time. Once two items have shown the feed lists them newest first, and
+     * while it keeps doing so, reading stops at the first item which is not newer than the given date, or at the item of
+     * the given guid, as none of the items below them can be newer either.
+     */
+    static class FeedItemIterator implements Iterator<FeedItem>, Closeable {
+        private final XMLStreamReader reader;
+        private final InputStream feed;
+        private final long stopAtOrBelow;
+        private final String stopAtGuid;
+        private long previousMillis = Long.MAX_VALUE;
+        private int itemsRead;
+        private String newestGuid;
+        private int ttlMinutes = -1;
+        private int skipHoursMask;
+        private boolean newestFirst = true;
+        private boolean descendingSeen;
+        private boolean markReached;
+        private FeedItem next;
+        private boolean done;
+        private boolean complete;
+
+        FeedItemIterator(XMLStreamReader reader, InputStream feed, long stopAtOrBelow, String stopAtGuid) {
+            this.reader = reader;
+            this.feed = feed;
+            this.stopAtOrBelow = stopAtOrBelow;
+            this.stopAtGuid = stopAtGuid;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = readItem();
+                if (next == null) {
+                    done = true;
+                    complete = true;
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public FeedItem next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FeedItem item = next;
+            next = null;
+            if (isLastSuitable(item)) {
+                done = true;
+                close();
+            }
+            return item;
+        }
+
+        private boolean isLastSuitable(FeedItem item) {
+            long millis = Rfc822DateParser.parseMillis(item.getPubDate());
+            if (itemsRead++ == 0 && millis != Rfc822DateParser.Invalid) {
+                newestGuid = item.getGuid();
+            }
+            if (millis == Rfc822DateParser.Invalid) {
+                return false;
+            }
+            newestFirst &= millis <= previousMillis;
+            descendingSeen |= previousMillis != Long.MAX_VALUE && millis < previousMillis;
+            previousMillis = millis;
+            markReached |= stopAtOrBelow != Rfc822DateParser.Invalid && millis <= stopAtOrBelow || item.getGuid() != null && item.getGuid().equals(stopAtGuid);
+            // a single item tells nothing about the order, an oldest first feed would lose its new items after it;
+            // the item itself is still handed out so that the high-water date sees it
+            return newestFirst && descendingSeen && markReached;
+        }
+
+        // as far as the feed was read
+        boolean isNewestFirst() {
+            return newestFirst;
+        }
+
+        // true once every item of the feed was read
+        boolean isComplete() {
+            return complete;
+        }
+
+        // the guid of the first item, if it is dated, where the next poll can stop
+        String getNewestGuid() {
+            return newestGuid;
+        }
+
+        // the channel's polling hints: <ttl> in minutes, -1 if absent
+        int getTtlMinutes() {
+            return ttlMinutes;
+        }
+
+        // bit h is set for every <skipHours><hour>h</hour> (GMT)
+        int getSkipHoursMask() {
+            return skipHoursMask;
+        }
+
+        private FeedItem readItem() {
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && isRssElement()) {
+                        String name = reader.getLocalName();
+                        if ("item".equals(name)) {
+                            return readItemChildren();
+                        } else if ("ttl".equals(name)) {
+                            ttlMinutes = (int) parseLength(reader.getElementText());
+                        } else if ("hour".equals(name)) { // only defined inside <skipHours>
+                            long hour = parseLength(reader.getElementText());
+                            if (hour >= 0 && hour < 24) {
+                                skipHoursMask |= 1 << hour;
+                            }
+                        }
+                    }
+                }
+                return null;
+            } catch (XMLStreamException exc) {
+                throw new RuntimeCamelException("Cannot read RSS feed", exc);
+            }
+        }
+
+        private FeedItem readItemChildren() throws XMLStreamException {
+            String guid = null;
+            String pubDate = null;
+            String enclosureUrl = null;
+            long enclosureLength = -1;
+            String enclosureType = null;
+
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 1 && isRssElement()) {
+                        String name = reader.getLocalName();
+                        if ("guid".equals(name)) {
+                            guid = reader.getElementText().trim();
+                            continue; // getElementText() consumed the end tag
+                        } else if ("pubDate".equals(name)) {
+                            pubDate = reader.getElementText().trim();
+                            continue;
+                        } else if ("enclosure".equals(name)) {
+                            enclosureUrl = reader.getAttributeValue(null, "url");
+                            enclosureLength = parseLength(reader.getAttributeValue(null, "length"));
+                            enclosureType = reader.getAttributeValue(null, "type");
+                        }
+                    }
+                    depth++;
+                }
+            }
+            return new FeedItem(guid, pubDate, enclosureUrl, enclosureLength, enclosureType);
+        }
+
+        private boolean isRssElement() {
+            String namespace = reader.getNamespaceURI();
+            return namespace == null || namespace.isEmpty();
+        }
+
+        private static long parseLength(String length) {
+            try {
+                return length != null ? Long.parseLong(length.trim()) : -1;
+            } catch (NumberFormatException exc) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+                feed.close();
+            } catch (Exception exc) {
+                // nothing left to read anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.podcast;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+@Component
+public class FeedRegistry {
+    private static final Pattern FeedIdPattern = Pattern.compile("[A-Za-z0-9._-]+"); // feed id names the feed's state folder
+
+    private final List<Feed> feeds;
+
+    @Autowired
+    public FeedRegistry(Environment environment, @Value("${destFolder}") String destFolder, @Value("${feedPollInterval}") Duration feedPollInterval) {
+        this(Binder.get(environment).bind("feeds", Bindable.listOf(Feed.class)).orElse(Collections.emptyList()), destFolder, feedPollInterval);
+    }
+
+    public FeedRegistry(List<Feed> feeds, String destFolder, Duration feedPollInterval) {
+        Set<String> ids = new HashSet<>();
+        for (Feed feed : feeds) {
+            if (feed.getId() == null || !FeedIdPattern.matcher(feed.getId()).matches()) {
+                throw new IllegalStateException("Feed id must match " + FeedIdPattern + ": " + feed);
+            }
+            if (!ids.add(feed.getId())) {
+                throw new IllegalStateException("Duplicate feed id: " + feed.getId());
+            }
+            if (feed.getUrl() == null) {
+                throw new IllegalStateException("Feed url is missing: " + feed);
+            }
+            if (feed.getDestFolder() == null) {
+                feed.setDestFolder(destFolder);
+            }
+            if (feed.getPollInterval() == null) {
+                feed.setPollInterval(feedPollInterval);
+            }
+            if (feed.getDownloadWeight() == null) {
+                feed.setDownloadWeight(1);
+            }
+        }
+        this.feeds = Collections.unmodifiableList(feeds);
+    }
+
+    public List<Feed> getFeeds() {
+        return feeds;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.podcast;
+
+import org.apache.camel.ExchangeProperty;
+import org.apache.camel.language.simple.Simple;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class FeedScheduler {
+    private final Feed[] feeds;
+    private final Map<String, Integer> feedIndexes = new HashMap<>();
+    private final long[] nextPollMillis;
+    private final boolean[] polling;
+    private final boolean pollOnce;
+    private int feedsPolled;
+
+    @Autowired
+    public FeedScheduler(FeedRegistry feedRegistry, @Value("${pollOnce}") boolean pollOnce) {
+        this(feedRegistry, pollOnce, System.currentTimeMillis());
+    }
+
+    FeedScheduler(FeedRegistry feedRegistry, long nowMillis) {
+        this(feedRegistry, false, nowMillis);
+    }
+
+    FeedScheduler(FeedRegistry feedRegistry, boolean pollOnce, long nowMillis) {
+        feeds = feedRegistry.getFeeds().toArray(new Feed[0]);
+        nextPollMillis = new long[feeds.length];
+        polling = new boolean[feeds.length];
+        this.pollOnce = pollOnce;
+        for (int i = 0; i < feeds.length; i++) {
+            feedIndexes.put(feeds[i].getId(), i);
+            // spread the first polls evenly over the poll interval so that feeds are not fetched at the same instant,
+            // a single run polls them all at once
+            nextPollMillis[i] = pollOnce ? nowMillis : nowMillis + feeds[i].getPollInterval().toMillis() * i / feeds.length;
+        }
+    }
+
+    public List<Feed> dueFeeds() {
+        return dueFeedsAt(System.currentTimeMillis());
+    }
+
+    synchronized List<Feed> dueFeedsAt(long nowMillis) {
+        List<Feed> due = new ArrayList<>();
+        for (int i = 0; i < feeds.length; i++) {
+            if (!polling[i] && nextPollMillis[i] <= nowMillis) {
+                polling[i] = true;
+                nextPollMillis[i] = nowMillis + feeds[i].getPollInterval().toMillis();
+                due.add(feeds[i]);
+            }
+        }
+        return due;
+    }
+
+    public void pollCompleted(@Simple("${header.feedId}") String feedId, @ExchangeProperty("nextPollDelayMillis") Long nextPollDelayMillis) {
+        pollCompleted(feedId, nextPollDelayMillis, System.currentTimeMillis());
+    }
+
+    // the delay learned from the feed replaces the configured poll interval
+    synchronized void pollCompleted(String feedId, Long nextPollDelayMillis, long nowMillis) {
+        Integer index = feedIndexes.get(feedId);
+        if (index != null) {
+            polling[index] = false;
+            if (pollOnce) {
+                nextPollMillis[index] = Long.MAX_VALUE;
+                feedsPolled++;
+            } else if (nextPollDelayMillis != null) {
+                nextPollMillis[index] = nowMillis + nextPollDelayMillis;
+            }
+        }
+    }
+
+    // with pollOnce, true once every feed has been polled, at once if there are none
+    public synchronized boolean isEveryFeedPolled() {
+        return pollOnce && feedsPolled == feeds.length;
+    }
+}
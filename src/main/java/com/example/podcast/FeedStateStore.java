@@ -0,0 +1,193 @@
+package com.example.podcast;
+
+import org.apache.camel.Body;
+import org.apache.camel.Exchange;
+import org.apache.camel.language.simple.Simple;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+@Component
+public class FeedStateStore {
+    private final String latestLoadedPodcastDateStorage = "latestLoadedPodcastDate.txt";
+    private final String httpValidatorsStorage = "httpValidators.properties";
+    private final String publishHistoryStorage = "publishHistory.txt";
+    private final String scanStateStorage = "scanState.properties";
+    private final String deadLettersStorage = "deadLetters.txt";
+
+    private Path stateFolder;
+
+    @Autowired
+    public FeedStateStore(@Value("${stateFolder}") String stateFolder) {
+        this.stateFolder = Paths.get(stateFolder);
+    }
+
+    public String readLatestDate(@Simple("${header.feedId}") String feedId) throws IOException {
+        Path stateFile = feedFolder(feedId).resolve(latestLoadedPodcastDateStorage);
+        if (!Files.exists(stateFile)) {
+            return null;
+        }
+        String date = new String(Files.readAllBytes(stateFile), StandardCharsets.UTF_8).trim();
+        return date.isEmpty() ? null : date;
+    }
+
+    public void writeLatestDate(@Simple("${header.feedId}") String feedId, @Body String date) throws IOException {
+        write(feedFolder(feedId).resolve(latestLoadedPodcastDateStorage), date);
+    }
+
+    // sets If-None-Match/If-Modified-Since from the validators of the last fully processed feed response
+    public void setConditionalGetHeaders(Exchange exchange) throws IOException {
+        Path validatorsFile = feedFolder(exchange.getMessage().getHeader("feedId", String.class)).resolve(httpValidatorsStorage);
+        if (!Files.exists(validatorsFile)) {
+            return;
+        }
+        Properties validators = new Properties();
+        try (InputStream in = Files.newInputStream(validatorsFile)) {
+            validators.load(in);
+        }
+        if (validators.getProperty("ETag") != null) {
+            exchange.getMessage().setHeader("If-None-Match", validators.getProperty("ETag"));
+        }
+        if (validators.getProperty("Last-Modified") != null) {
+            exchange.getMessage().setHeader("If-Modified-Since", validators.getProperty("Last-Modified"));
+        }
+    }
+
+    // moves the validators of the feed response out of the headers so they do not leak into episode downloads
+    public void keepHttpValidators(Exchange exchange) {
+        exchange.setProperty("feedETag", exchange.getMessage().removeHeader("ETag"));
+        exchange.setProperty("feedLastModified", exchange.getMessage().removeHeader("Last-Modified"));
+        exchange.getMessage().removeHeaders("If-None-Match|If-Modified-Since");
+    }
+
+    // saved only once the feed has been processed, a failed poll must not turn into 304 Not Modified next time;
+    // neither must a poll that left episodes to retry, they come with the next full response of the feed
+    public void saveHttpValidators(Exchange exchange) throws IOException {
+        Properties validators = new Properties();
+        if (exchange.getProperty("deadLetters", 0, Integer.class) > 0) {
+            exchange.removeProperty("feedETag");
+            exchange.removeProperty("feedLastModified");
+        }
+        String eTag = exchange.getProperty("feedETag", String.class);
+        String lastModified = exchange.getProperty("feedLastModified", String.class);
+        if (eTag != null) {
+            validators.setProperty("ETag", eTag);
+        }
+        if (lastModified != null) {
+            validators.setProperty("Last-Modified", lastModified);
+        }
+        Path validatorsFile = feedFolder(exchange.getMessage().getHeader("feedId", String.class)).resolve(httpValidatorsStorage);
+        if (validators.isEmpty()) {
+            Files.deleteIfExists(validatorsFile);
+            return;
+        }
+        Files.createDirectories(validatorsFile.getParent());
+        Path tempFile = validatorsFile.resolveSibling(validatorsFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            validators.store(out, null);
+        }
+        Files.move(tempFile, validatorsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // sets guidCursor, the newest item of the last poll, and incrementalScans, the polls since the feed was last read in full,
+    // only for a feed found to list its items newest first
+    public void readScanState(Exchange exchange) throws IOException {
+        Path scanStateFile = feedFolder(exchange.getMessage().getHeader("feedId", String.class)).resolve(scanStateStorage);
+        if (!Files.exists(scanStateFile)) {
+            return;
+        }
+        Properties scanState = new Properties();
+        try (InputStream in = Files.newInputStream(scanStateFile)) {
+            scanState.load(in);
+        }
+        if ("true".equals(scanState.getProperty("newestFirst"))) {
+            exchange.getMessage().setHeader("guidCursor", scanState.getProperty("guidCursor"));
+            exchange.getMessage().setHeader("incrementalScans", Integer.parseInt(scanState.getProperty("incrementalScans", "0")));
+        }
+    }
+
+    // saved only once the feed has been processed, like the latest date the next poll stops at
+    public void writeScanState(Exchange exchange) throws IOException {
+        FeedParser.FeedItemIterator scan = exchange.getProperty("feedScan", FeedParser.FeedItemIterator.class);
+        if (scan == null) {
+            return;
+        }
+        Properties scanState = new Properties();
+        scanState.setProperty("newestFirst", Boolean.toString(scan.isNewestFirst()));
+        if (scan.isNewestFirst() && scan.getNewestGuid() != null) {
+            scanState.setProperty("guidCursor", scan.getNewestGuid());
+        }
+        int incrementalScans = scan.isComplete() ? 0 : exchange.getMessage().getHeader("incrementalScans", 0, Integer.class) + 1;
+        scanState.setProperty("incrementalScans", Integer.toString(incrementalScans));
+        Path scanStateFile = feedFolder(exchange.getMessage().getHeader("feedId", String.class)).resolve(scanStateStorage);
+        Files.createDirectories(scanStateFile.getParent());
+        Path tempFile = scanStateFile.resolveSibling(scanStateFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            scanState.store(out, null);
+        }
+        Files.move(tempFile, scanStateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // epoch millis of the latest publications, newest first
+    public long[] readPublishHistory(String feedId) throws IOException {
+        Path historyFile = feedFolder(feedId).resolve(publishHistoryStorage);
+        if (!Files.exists(historyFile)) {
+            return new long[0];
+        }
+        return Files.readAllLines(historyFile, StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .mapToLong(Long::parseLong)
+                .toArray();
+    }
+
+    public void writePublishHistory(String feedId, long[] publications) throws IOException {
+        StringBuilder history = new StringBuilder();
+        for (long publication : publications) {
+            history.append(publication).append('\n');
+        }
+        write(feedFolder(feedId).resolve(publishHistoryStorage), history.toString());
+    }
+
+    // episodes left to retry, one line each
+    public List<String> readDeadLetters(String feedId) throws IOException {
+        Path deadLettersFile = feedFolder(feedId).resolve(deadLettersStorage);
+        return Files.exists(deadLettersFile) ? Files.readAllLines(deadLettersFile, StandardCharsets.UTF_8) : Collections.emptyList();
+    }
+
+    public void writeDeadLetters(String feedId, List<String> deadLetters) throws IOException {
+        Path deadLettersFile = feedFolder(feedId).resolve(deadLettersStorage);
+        if (deadLetters.isEmpty()) {
+            Files.deleteIfExists(deadLettersFile);
+            return;
+        }
+        StringBuilder content = new StringBuilder();
+        for (String deadLetter : deadLetters) {
+            content.append(deadLetter).append('\n');
+        }
+        write(deadLettersFile, content.toString());
+    }
+
+    public Path feedFolder(String feedId) {
+        return stateFolder.resolve(feedId);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tempFile, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.podcast;
+
+import org.apache.camel.language.simple.Simple;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Index of loaded episodes. Every record is a 64-bit fingerprint of the feed id followed by a 64-bit fingerprint of
+// feed id and guid, so membership checks stay O(1) and cheap in memory for millions of episodes.
+// New records go to a write-ahead journal, each one with a checksum. A loaded episode is acknowledged once the journal
+// is forced to disk; threads that append while a force is running share the next one (group commit). The journal is
+// compacted into the snapshot loadedGuids.idx at startup and whenever it grows past journalCompactionRecords, so
+// recovery is a bulk read of the snapshot plus a short replay.
+@Component
+public class GuidIndex {
+    private static final int RecordSize = 16;
+    private static final int JournalRecordSize = 24;
+    private static final long TrackedMarker = 0; // item fingerprint of the record telling that a feed's guids are tracked
+
+    private final LongHashSet loadedEpisodes;
+    private final LongHashSet trackedFeeds;
+    private final Path snapshotPath;
+    private final FileChannel journal;
+    private final int compactionRecords;
+    private final ByteBuffer record = ByteBuffer.allocate(JournalRecordSize);
+    private final Object syncLock = new Object();
+    private final AtomicLong durable = new AtomicLong(); // journal bytes known to be on disk, counted across compactions
+    private volatile long appended; // journal bytes written, counted across compactions
+    private long journalRecords;
+
+    @Autowired
+    public GuidIndex(@Value("${stateFolder}") String stateFolder, @Value("${journalCompactionRecords}") int compactionRecords) throws IOException {
+        this(Paths.get(stateFolder).resolve("loadedGuids.idx"), compactionRecords);
+    }
+
+    public GuidIndex(Path indexPath, int compactionRecords) throws IOException {
+        Files.createDirectories(indexPath.toAbsolutePath().getParent());
+        this.snapshotPath = indexPath;
+        this.compactionRecords = compactionRecords;
+
+        long snapshotRecords = 0;
+        if (Files.exists(indexPath)) {
+            snapshotRecords = Files.size(indexPath) / RecordSize; // drops a record torn by a crash of the former append-only index
+        }
+        loadedEpisodes = new LongHashSet((int) Math.min(snapshotRecords, Integer.MAX_VALUE / 4));
+        trackedFeeds = new LongHashSet(16);
+        if (snapshotRecords > 0) {
+            try (FileChannel snapshot = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(RecordSize * 4096);
+                for (long position = 0; position < snapshotRecords * RecordSize; ) {
+                    position += read(snapshot, buffer, position, snapshotRecords * RecordSize - position);
+                    while (buffer.hasRemaining()) {
+                        apply(buffer.getLong(), buffer.getLong());
+                    }
+                }
+            }
+        }
+
+        journal = FileChannel.open(journalPathOf(indexPath), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(JournalRecordSize * 4096);
+        long journalSize = journal.size() / JournalRecordSize * JournalRecordSize;
+        long position = 0;
+        replay:
+        while (position < journalSize) {
+            read(journal, buffer, position, journalSize - position);
+            while (buffer.hasRemaining()) {
+                long feedFingerprint = buffer.getLong();
+                long episodeFingerprint = buffer.getLong();
+                if (buffer.getLong() != checksum(feedFingerprint, episodeFingerprint)) {
+                    break replay; // a record torn by a crash ends the journal
+                }
+                apply(feedFingerprint, episodeFingerprint);
+                position += JournalRecordSize;
+                journalRecords++;
+            }
+        }
+        journal.truncate(position);
+        if (journalRecords > 0) {
+            compact();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    public synchronized boolean contains(String feedId, String guid) {
+        return loadedEpisodes.contains(fingerprint(feedId, guid));
+    }
+
+    // returns once the episode is on disk
+    public void add(@Simple("${header.feedId}") String feedId, @Simple("${header.guid}") String guid) throws IOException {
+        long position = adopt(feedId, guid);
+        if (position > 0) {
+            sync(position);
+        }
+    }
+
+    // records an episode loaded or skipped in the past, it is made durable along with the next add or track
+    public synchronized long adopt(String feedId, String guid) throws IOException {
+        long episodeFingerprint = fingerprint(feedId, guid);
+        return loadedEpisodes.add(episodeFingerprint) ? append(fingerprint(feedId, null), episodeFingerprint) : 0;
+    }
+
+    // true once a whole poll of the feed went through the index, its guids alone then tell what has been loaded
+    public synchronized boolean isTracked(String feedId) {
+        return trackedFeeds.contains(fingerprint(feedId, null));
+    }
+
+    public void track(@Simple("${header.feedId}") String feedId) throws IOException {
+        long position;
+        synchronized (this) {
+            long feedFingerprint = fingerprint(feedId, null);
+            position = trackedFeeds.add(feedFingerprint) ? append(feedFingerprint, TrackedMarker) : appended;
+        }
+        sync(position); // also covers the episodes adopted during the poll
+    }
+
+    private void apply(long feedFingerprint, long episodeFingerprint) {
+        if (episodeFingerprint == TrackedMarker) {
+            trackedFeeds.add(feedFingerprint);
+        } else {
+            loadedEpisodes.add(episodeFingerprint);
+        }
+    }
+
+    // returns the journal bytes to be durable for the record
+    private long append(long feedFingerprint, long episodeFingerprint) throws IOException {
+        if (journalRecords >= compactionRecords) {
+            compact();
+        }
+        record.clear();
+        record.putLong(feedFingerprint).putLong(episodeFingerprint).putLong(checksum(feedFingerprint, episodeFingerprint));
+        record.flip();
+        long position = journalRecords * JournalRecordSize;
+        while (record.hasRemaining()) {
+            position += journal.write(record, position);
+        }
+        journalRecords++;
+        appended += JournalRecordSize;
+        return appended;
+    }
+
+    // one force makes the records of all threads appended so far durable, the threads waiting meanwhile need no other
+    private void sync(long position) throws IOException {
+        synchronized (syncLock) {
+            if (durable.get() >= position) {
+                return;
+            }
+            long batch = appended;
+            journal.force(false);
+            durable.accumulateAndGet(batch, Math::max);
+        }
+    }
+
+    // writes snapshot and journal records into a new snapshot that replaces the old one atomically, then empties the journal;
+    // a crash in between only replays records the new snapshot already holds
+    private void compact() throws IOException {
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel temp = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (Files.exists(snapshotPath)) {
+                try (FileChannel snapshot = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+                    long size = snapshot.size() / RecordSize * RecordSize;
+                    long position = 0;
+                    while (position < size) {
+                        position += snapshot.transferTo(position, size - position, temp);
+                    }
+                }
+            }
+            ByteBuffer in = ByteBuffer.allocateDirect(JournalRecordSize * 4096);
+            ByteBuffer out = ByteBuffer.allocateDirect(RecordSize * 4096);
+            for (long position = 0; position < journalRecords * JournalRecordSize; ) {
+                position += read(journal, in, position, journalRecords * JournalRecordSize - position);
+                out.clear();
+                while (in.hasRemaining()) {
+                    out.putLong(in.getLong()).putLong(in.getLong());
+                    in.getLong(); // the checksum
+                }
+                out.flip();
+                while (out.hasRemaining()) {
+                    temp.write(out);
+                }
+            }
+            temp.force(true);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.force(true);
+        journalRecords = 0;
+        durable.accumulateAndGet(appended, Math::max);
+    }
+
+    // fills the buffer with up to length bytes from the position and flips it for reading
+    private static int read(FileChannel channel, ByteBuffer buffer, long position, long length) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), length));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + channel);
+            }
+        }
+        buffer.flip();
+        return buffer.limit();
+    }
+
+    private static Path journalPathOf(Path indexPath) {
+        String name = indexPath.getFileName().toString();
+        return indexPath.resolveSibling((name.endsWith(".idx") ? name.substring(0, name.length() - 4) : name) + ".journal");
+    }
+
+    private static long checksum(long feedFingerprint, long episodeFingerprint) {
+        long hash = feedFingerprint ^ Long.rotateLeft(episodeFingerprint, 29) ^ 0x9e3779b97f4a7c15L; // zeroed blocks do not pass
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // FNV-1a over the UTF-16 chars followed by the MurmurHash3 finalizer, never 0
+    static long fingerprint(String feedId, String guid) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hashChars(hash, feedId);
+        if (guid != null) {
+            hash = (hash ^ '\n') * 0x100000001b3L;
+            hash = hashChars(hash, guid);
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    private static long hashChars(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.language.simple.Simple;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// Keeps a failing host from being asked again and again. Once circuitBreakerFailures downloads in a row failed on a host,
+// its circuit opens and its episodes fail at once for circuitBreakerOpenInterval. Then a single trial download is let
+// through: its success closes the circuit, its failure opens it again.
+@Component
+public class HostCircuitBreaker {
+    private final Map<String, Circuit> circuits = new HashMap<>();
+
+    private int failureThreshold;
+    private long openMillis;
+
+    @Autowired
+    public HostCircuitBreaker(@Value("${circuitBreakerFailures}") int failureThreshold, @Value("${circuitBreakerOpenInterval}") Duration openInterval) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openInterval.toMillis();
+    }
+
+    public void acquire(@Simple("${header.enclosureUrl}") String url) throws HostUnavailableException {
+        acquire(url, System.currentTimeMillis());
+    }
+
+    synchronized void acquire(String url, long nowMillis) throws HostUnavailableException {
+        String host = Urls.hostOf(url);
+        Circuit circuit = circuits.get(host);
+        if (circuit == null || circuit.failures < failureThreshold) {
+            return;
+        }
+        if (nowMillis < circuit.openUntilMillis) {
+            throw new HostUnavailableException("Host " + host + " failed " + circuit.failures + " downloads in a row, not asked again for "
+                    + (circuit.openUntilMillis - nowMillis) + " ms");
+        }
+        circuit.openUntilMillis = nowMillis + openMillis; // this download is the trial, the others fail until it tells
+    }
+
+    // called once per download attempt that got past acquire, the failure is taken from the doFinally that calls it;
+    // only an answer of the host closes its circuit, not an episode taken from the store without asking it
+    public void downloadFinished(Exchange exchange) {
+        Throwable failure = exchange.getException() != null ? exchange.getException() : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+        String url = exchange.getMessage().getHeader("enclosureUrl", String.class);
+        if (failure == null) {
+            if (Boolean.TRUE.equals(exchange.getProperty("enclosureRequested", Boolean.class))) {
+                succeeded(url);
+            }
+        } else if (isHostFailure(failure)) {
+            failed(url, System.currentTimeMillis());
+        }
+    }
+
+    synchronized void succeeded(String url) {
+        circuits.remove(Urls.hostOf(url));
+    }
+
+    synchronized void failed(String url, long nowMillis) {
+        Circuit circuit = circuits.computeIfAbsent(Urls.hostOf(url), host -> new Circuit());
+        if (++circuit.failures >= failureThreshold) {
+            circuit.openUntilMillis = nowMillis + openMillis;
+        }
+    }
+
+    // a failed download is worth another try while its host may recover and is not known to be down
+    public boolean allowsRetry(Exchange exchange) {
+        Throwable failure = exchange.getException() != null ? exchange.getException() : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+        return isHostFailure(failure) && !isOpen(exchange.getMessage().getHeader("enclosureUrl", String.class));
+    }
+
+    synchronized boolean isOpen(String url) {
+        Circuit circuit = circuits.get(Urls.hostOf(url));
+        return circuit != null && circuit.failures >= failureThreshold;
+    }
+
+    public synchronized int openCircuits() {
+        return (int) circuits.values().stream().filter(circuit -> circuit.failures >= failureThreshold).count();
+    }
+
+    // failures of the server or of the way to it rather than of the episode or of the local disk: a refused connection, a
+    // connect, response or idle timeout and 5xx, 408 or 429 responses; e.g. 404 Not Found or a full disk is not one
+    static boolean isHostFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpOperationFailedException) {
+                int status = ((HttpOperationFailedException) cause).getStatusCode();
+                return status >= 500 || status == 408 || status == 429;
+            }
+            if (cause instanceof ConnectException || cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Circuit {
+        int failures;
+        long openUntilMillis;
+    }
+
+    static class HostUnavailableException extends IOException {
+        HostUnavailableException(String message) {
+            super(message);
+        }
+    }
+}
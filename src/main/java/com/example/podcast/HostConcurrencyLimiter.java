@@ -0,0 +1,41 @@
+package com.example.podcast;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Counts the downloads running per host, the download scheduler only starts an episode whose host is below the cap.
+@Component
+public class HostConcurrencyLimiter {
+    private final Map<String, Integer> running = new HashMap<>();
+
+    private int maxDownloadsPerHost;
+
+    @Autowired
+    public HostConcurrencyLimiter(@Value("${maxDownloadsPerHost}") int maxDownloadsPerHost) {
+        this.maxDownloadsPerHost = maxDownloadsPerHost;
+    }
+
+    public synchronized boolean tryAcquire(String url) {
+        String host = Urls.hostOf(url);
+        int count = running.getOrDefault(host, 0);
+        if (count >= maxDownloadsPerHost) {
+            return false;
+        }
+        running.put(host, count + 1);
+        return true;
+    }
+
+    public synchronized void release(String url) {
+        String host = Urls.hostOf(url);
+        int count = running.getOrDefault(host, 0);
+        if (count <= 1) {
+            running.remove(host);
+        } else {
+            running.put(host, count - 1);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.podcast;
+
+// open addressing set of non-zero longs, 8 bytes per slot and no boxing
+class LongHashSet {
+    private long[] slots;
+    private int size;
+
+    LongHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+    }
+
+    boolean contains(long value) {
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+        }
+    }
+
+    boolean add(long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("0 marks a free slot");
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return false;
+            }
+            if (slot == 0) {
+                slots[i] = value;
+                if (++size * 2 > slots.length) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        size = 0;
+        for (long value : old) {
+            if (value != 0) {
+                add(value);
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        return (int) (value ^ (value >>> 32)) * 0x9E3779B9;
+    }
+}
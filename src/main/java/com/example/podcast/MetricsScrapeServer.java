@@ -0,0 +1,57 @@
+package com.example.podcast;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// serves the Prometheus scrape on http://{{metricsAddress}}:{{metricsPort}}/metrics, the app has no web server of its own;
+// metricsAddress is the loopback address unless a scraper on another host needs e.g. 0.0.0.0
+@Component
+public class MetricsScrapeServer {
+    private final PrometheusMeterRegistry registry;
+    private final HttpServer server;
+
+    @Autowired
+    public MetricsScrapeServer(ObjectProvider<PrometheusMeterRegistry> registry, @Value("${metricsAddress}") String metricsAddress,
+                               @Value("${metricsPort}") int metricsPort) throws IOException {
+        this.registry = registry.getIfAvailable(); // missing when management.metrics.export.prometheus.enabled=false
+        if (metricsPort < 0 || this.registry == null) {
+            server = null;
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(metricsAddress, metricsPort), 0);
+        server.createContext("/metrics", this::scrape);
+        server.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", TextFormat.CONTENT_TYPE_004);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -1,41 +1,190 @@
 package com.example.podcast;
 
 import org.apache.camel.Exchange;
+import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.seda.SedaEndpoint;
+import org.apache.camel.http.base.HttpOperationFailedException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
 @Component
 public class MyRouteBuilder extends RouteBuilder {
-    private final String latestLoadedPodcastDateStorage = "latestLoadedPodcastDate.txt";
     private UrlProvider urlProvider;
     private UpdateHelper updateHelper;
+    private FeedParser feedParser;
+    private FeedScheduler feedScheduler;
+    private FeedStateStore feedStateStore;
+    private FeedFetcher feedFetcher;
+    private FeedCadence feedCadence;
+    private DownloadScheduler downloadScheduler;
+    private EpisodeDownloader episodeDownloader;
+    private EpisodeStore episodeStore;
+    private SharedHttpClient httpClient;
+    private HostCircuitBreaker hostCircuitBreaker;
+    private DeadLetterList deadLetterList;
+    private GuidIndex guidIndex;
+    private PodcastMetrics podcastMetrics;
+    private PollOnceExit pollOnceExit;
+    private boolean parallelDownloads;
+    private int downloadThreads;
+    private int downloadRetries;
+    private Duration downloadRetryDelay;
+    private Duration maxDownloadRetryDelay;
+    private double downloadRetryJitter;
 
     @Autowired
-    public MyRouteBuilder(UrlProvider urlProvider, UpdateHelper updateHelper) {
+    public MyRouteBuilder(UrlProvider urlProvider, UpdateHelper updateHelper, FeedParser feedParser, FeedScheduler feedScheduler,
+                          FeedStateStore feedStateStore, FeedFetcher feedFetcher, FeedCadence feedCadence, DownloadScheduler downloadScheduler, EpisodeDownloader episodeDownloader,
+                          EpisodeStore episodeStore, SharedHttpClient httpClient, HostCircuitBreaker hostCircuitBreaker, DeadLetterList deadLetterList, GuidIndex guidIndex,
+                          PodcastMetrics podcastMetrics, PollOnceExit pollOnceExit, @Value("${parallelDownloads}") boolean parallelDownloads, @Value("${downloadThreads}") int downloadThreads,
+                          @Value("${downloadRetries}") int downloadRetries, @Value("${downloadRetryDelay}") Duration downloadRetryDelay,
+                          @Value("${maxDownloadRetryDelay}") Duration maxDownloadRetryDelay, @Value("${downloadRetryJitter}") double downloadRetryJitter) {
         this.urlProvider = urlProvider;
         this.updateHelper = updateHelper;
+        this.feedParser = feedParser;
+        this.feedScheduler = feedScheduler;
+        this.feedStateStore = feedStateStore;
+        this.feedFetcher = feedFetcher;
+        this.feedCadence = feedCadence;
+        this.downloadScheduler = downloadScheduler;
+        this.episodeDownloader = episodeDownloader;
+        this.episodeStore = episodeStore;
+        this.httpClient = httpClient;
+        this.hostCircuitBreaker = hostCircuitBreaker;
+        this.deadLetterList = deadLetterList;
+        this.guidIndex = guidIndex;
+        this.podcastMetrics = podcastMetrics;
+        this.pollOnceExit = pollOnceExit;
+        this.parallelDownloads = parallelDownloads;
+        this.downloadThreads = downloadThreads;
+        this.downloadRetries = downloadRetries;
+        this.downloadRetryDelay = downloadRetryDelay;
+        this.maxDownloadRetryDelay = maxDownloadRetryDelay;
+        this.downloadRetryJitter = downloadRetryJitter;
     }
 
     @Override
     public void configure() {
-        from(urlProvider.getStateFileInUrl()) // read date of the latest loaded podcast
-                .log("Started loading new podcasts since '${body}' from rss: {{rssURL}}")
-                .setHeader("latestLoadedPodcastDate", body())
-                .to(urlProvider.getRssFeedUrl()) // load RSS feed
-                .split().xpath("rss/channel/item").stopOnException()
-                    .setHeader("publicationDate", xpath("/item/pubDate/text()"))
-                    .filter(method(updateHelper, "isSuitablePublication"))
-                        .setHeader(Exchange.FILE_NAME, xpath("/item/guid/text()").append(constant(".mp3")))
-                        .setHeader(Exchange.HTTP_QUERY, constant("throwExceptionOnFailure=false")) // to suppress redirection exception (http status 302)
-                        .toD("language:xpath:/item/enclosure/@url") // download a podcast
-                        .setHeader(Exchange.HTTP_QUERY, constant("throwExceptionOnFailure=true"))
-                        .to(urlProvider.getDestFolderUrl()) // save downloaded podcast to destination folder
-                        .log("Podcast ${header." + Exchange.FILE_NAME + "} as of ${header.publicationDate} saved to folder {{destFolder}}")
+        ExecutorService downloadPool = parallelDownloads ? getContext().getExecutorServiceManager().newFixedThreadPool(this, "EpisodeDownload", downloadThreads) : null; // the splitter goes parallel whenever it is given a pool
+
+        from(urlProvider.getSchedulerUrl()).routeId("feedScheduler") // one shared timer for all feeds
+                .split(method(feedScheduler, "dueFeeds"))
+                    .to(urlProvider.getFeedPollUrl())
+                .end();
+
+        podcastMetrics.monitorQueue("pollFeed", () -> getContext().getEndpoint(urlProvider.getFeedPollUrl(), SedaEndpoint.class).getCurrentQueueSize());
+        podcastMetrics.monitorQueue("downloads", downloadScheduler::queueSize);
+        podcastMetrics.monitorHttpClient(httpClient);
+        podcastMetrics.monitorCircuitBreaker(hostCircuitBreaker);
+
+        from(urlProvider.getFeedPollUrl()).routeId("pollFeed")
+                .onCompletion()
+                    .bean(podcastMetrics, "pollCompleted")
+                    .doTry()
+                        .bean(feedCadence, "pollCompleted") // learns when to poll the feed next
+                    .doFinally() // the feed must be scheduled again whatever happens
+                        .bean(feedScheduler, "pollCompleted")
+                        .bean(pollOnceExit, "pollCompleted") // a single run exits after the last feed
+                    .end()
+                .end()
+                .setHeader("feedId", simple("${body.id}")) // scopes the state kept for the feed
+                .setHeader("rssUrl", simple("${body.url}"))
+                .setHeader("destFolder", simple("${body.destFolder}"))
+                .setHeader("downloadWeight", simple("${body.downloadWeight}"))
+                .setHeader("latestLoadedPodcastDate", method(feedStateStore, "readLatestDate")) // read date of the latest loaded podcast
+                .log("Started loading new podcasts since '${header.latestLoadedPodcastDate}' from rss: ${header.rssUrl}")
+                .setBody(constant(null))
+                .bean(feedStateStore, "setConditionalGetHeaders")
+                .bean(feedStateStore, "readScanState") // where reading a feed in order can stop
+                .setProperty("pollStage", constant("fetch"))
+                .bean(podcastMetrics, "fetchStarted")
+                .doTry()
+                    .choice()
+                        .when(header("rssUrl").regex("(?i)https?:.*"))
+                            .process(feedFetcher) // load RSS feed without holding a thread while waiting for the server
+                        .otherwise()
+                            .toD("${header.rssUrl}") // load RSS feed from any other endpoint
+                    .endChoice().endDoTry()
+                .doCatch(HttpOperationFailedException.class).onWhen(simple("${exception.statusCode} == 304"))
+                    .setProperty("feedNotModified", constant(true))
+                .end()
+                .bean(podcastMetrics, "feedFetched") // a 304 Not Modified is a fetch as well
+                .bean(feedCadence, "cacheHints")
+                .bean(feedStateStore, "keepHttpValidators")
+                .filter(exchangeProperty("feedNotModified"))
+                    .log("Feed ${header.rssUrl} not modified.")
+                    .stop()
+                .end()
+                .setHeader("needNewerThanMillis", method(updateHelper, "needNewerThanMillis"))
+                .setHeader("notOlderThanMillis", method(updateHelper, "notOlderThanMillis"))
+                .setProperty("pollStage", constant("items"))
+                .bean(feedParser, "parse") // newest items first, only down to those seen before
+                .setBody(method(feedCadence, "observe"))
+                .setBody(method(podcastMetrics, "timeParsing"))
+                .setBody(method(deadLetterList, "withRetries")) // episodes failed before come after the feed's own items
+                .setBody(parallelDownloads ? method(downloadScheduler, "admit") : body()) // one by one a feed has a single episode queued
+                .split(body()).streaming().parallelProcessing(parallelDownloads).executorService(downloadPool)
+                    .setHeader("publicationDate", simple("${body.pubDate}"))
+                    .setHeader("guid", simple("${body.guid}"))
+                    .setProperty("suitablePublication", method(updateHelper, "isSuitablePublication"))
+                    .bean(podcastMetrics, "itemChecked")
+                    .filter(exchangeProperty("suitablePublication"))
+                        .setHeader(Exchange.FILE_NAME, simple("${body.guid}.mp3"))
+                        .setHeader("enclosureUrl", simple("${body.enclosureUrl}"))
+                        .setHeader("enclosureLength", simple("${body.enclosureLength}"))
+                        .to("direct:loadEpisode") // a failed episode does not stop the others
                     .end()
                 .end()
                 .setBody(method(updateHelper, "getLatestPodcastDate"))
-                .to(urlProvider.getStateFileOutUrl()) // save date of the latest loaded podcast
+                .bean(feedStateStore, "writeLatestDate") // save date of the latest loaded podcast
+                .bean(deadLetterList, "save")
+                .bean(feedStateStore, "saveHttpValidators")
+                .bean(feedStateStore, "writeScanState")
+                .bean(guidIndex, "track") // from now on the guid index alone decides what was loaded
                 .log("Done.");
+
+        // every attempt runs downloadEpisode again, so the download slot is free while the episode waits for its next try
+        from("direct:loadEpisode").routeId("loadEpisode")
+                .errorHandler(deadLetterChannel("direct:episodeFailed")
+                        .retryWhile(simple("${header." + Exchange.REDELIVERY_COUNTER + "} <= " + downloadRetries + " && ${bean:hostCircuitBreaker?method=allowsRetry} == true"))
+                        .redeliveryDelay(downloadRetryDelay.toMillis())
+                        .useExponentialBackOff()
+                        .backOffMultiplier(2)
+                        .maximumRedeliveryDelay(maxDownloadRetryDelay.toMillis())
+                        .useCollisionAvoidance()
+                        .collisionAvoidancePercent(downloadRetryJitter * 100)
+                        .asyncDelayedRedelivery() // waits on a timer, not on a thread
+                        .retryAttemptedLogLevel(LoggingLevel.WARN)
+                        .logExhausted(false))
+                .to("direct:downloadEpisode");
+
+        from("direct:downloadEpisode").routeId("downloadEpisode")
+                .errorHandler(noErrorHandler()) // failures go back to loadEpisode to be retried
+                .bean(hostCircuitBreaker, "acquire") // episodes of a host that keeps failing fail at once
+                .process(downloadScheduler) // wait for a download slot, newest episodes of the heaviest feeds first
+                .doTry()
+                    .bean(podcastMetrics, "downloadStarted")
+                    .bean(episodeStore, "findKnown") // the same enclosure stored before is not downloaded again
+                    .filter(exchangeProperty("contentKnown").isNotEqualTo(true))
+                        .process(episodeDownloader) // stream a podcast into a work file on the non-blocking http client
+                        .bean(podcastMetrics, "downloadCompleted")
+                    .endDoTry()
+                    .toD(urlProvider.getDestFolderUrl()) // store the podcast once by its content and link it into the destination folder
+                    .bean(updateHelper, "episodeLoaded") // journaled before the next episode is acknowledged
+                    .log("Podcast ${header." + Exchange.FILE_NAME + "} as of ${header.publicationDate} saved to folder ${header.destFolder}")
+                .doFinally()
+                    .bean(downloadScheduler, "release")
+                    .bean(hostCircuitBreaker, "downloadFinished")
+                    .bean(podcastMetrics, "downloadFinished")
+                .end();
+
+        from("direct:episodeFailed").routeId("episodeFailed")
+                .bean(deadLetterList, "add")
+                .bean(podcastMetrics, "episodeFailed");
     }
 }
@@ -1,11 +1,24 @@
 package com.example.podcast;
 
+import org.apache.camel.CamelContext;
+import org.apache.camel.RoutesBuilder;
+import org.apache.camel.spring.boot.CamelMainRunController;
+import org.apache.camel.spring.boot.CamelSpringBootApplicationListener;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class PodcastApplication {
     public static void main(String[] args) {
         SpringApplication.run(PodcastApplication.class, args);
     }
+
+    // spring.main.lazy-initialization leaves beans nobody asks for uncreated, Camel and its routes are what runs the app
+    @Bean
+    static LazyInitializationExcludeFilter camelNotLazy() {
+        return LazyInitializationExcludeFilter.forBeanTypes(CamelContext.class, RoutesBuilder.class, CamelSpringBootApplicationListener.class,
+                CamelMainRunController.class);
+    }
 }
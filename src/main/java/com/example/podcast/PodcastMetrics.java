@@ -0,0 +1,284 @@
+package com.example.podcast;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangeProperty;
+import org.apache.camel.language.simple.Simple;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Metrics of the poll stages per feed. Meters are looked up once per feed and cached, so recording on the per item
+// path is a map lookup and an atomic add.
+@Component
+public class PodcastMetrics {
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, FeedMeters> feedMeters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> failures = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlightDownloads = new AtomicInteger();
+
+    @Autowired
+    public PodcastMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("podcast.downloads.inflight", inFlightDownloads, AtomicInteger::get)
+                .description("Episode downloads in progress")
+                .register(registry);
+    }
+
+    public void monitorQueue(String name, Supplier<Number> depth) {
+        Gauge.builder("podcast.queue.depth", depth, supplier -> supplier.get().doubleValue())
+                .tag("queue", name)
+                .description("Messages waiting in the queue")
+                .register(registry);
+    }
+
+    // requests per protocol version against the TLS connections opened for them show how well connections are reused
+    public void monitorHttpClient(SharedHttpClient httpClient) {
+        for (HttpClient.Version version : HttpClient.Version.values()) {
+            FunctionCounter.builder("podcast.http.responses", httpClient, client -> client.responses(version))
+                    .tag("version", version == HttpClient.Version.HTTP_2 ? "2" : "1.1")
+                    .description("HTTP responses received by protocol version")
+                    .register(registry);
+        }
+        FunctionCounter.builder("podcast.http.connections", httpClient, SharedHttpClient::tlsConnections)
+                .description("TLS connections opened")
+                .register(registry);
+        Gauge.builder("podcast.http.waiting", httpClient, SharedHttpClient::waitingRequests)
+                .description("HTTP requests waiting for a free connection to their host")
+                .register(registry);
+    }
+
+    public void monitorCircuitBreaker(HostCircuitBreaker circuitBreaker) {
+        Gauge.builder("podcast.hosts.unavailable", circuitBreaker, HostCircuitBreaker::openCircuits)
+                .description("Hosts whose episodes fail at once after their downloads failed in a row")
+                .register(registry);
+    }
+
+    public void fetchStarted(Exchange exchange) {
+        exchange.setProperty("fetchStartedNanos", System.nanoTime());
+    }
+
+    // records the latency up to the response and counts the bytes of the body as the parser reads them
+    public void feedFetched(Exchange exchange) {
+        FeedMeters meters = metersOf(exchange.getMessage().getHeader("feedId", String.class));
+        meters.fetch.record(System.nanoTime() - exchange.getProperty("fetchStartedNanos", Long.class), TimeUnit.NANOSECONDS);
+        InputStream feed = exchange.getMessage().getBody(InputStream.class);
+        if (feed != null) {
+            exchange.getMessage().setBody(new CountingInputStream(feed, meters.feedBytes));
+        }
+    }
+
+    public Iterator<FeedItem> timeParsing(@Simple("${header.feedId}") String feedId, Iterator<FeedItem> items) {
+        return new TimedIterator(items, metersOf(feedId).parse);
+    }
+
+    public void itemChecked(@Simple("${header.feedId}") String feedId, @ExchangeProperty("suitablePublication") boolean suitable) {
+        FeedMeters meters = metersOf(feedId);
+        meters.itemsSeen.increment();
+        if (!suitable) {
+            meters.itemsFiltered.increment();
+        }
+    }
+
+    public void downloadStarted(Exchange exchange) {
+        inFlightDownloads.incrementAndGet();
+        exchange.setProperty("downloadStartedNanos", System.nanoTime());
+    }
+
+    public void downloadCompleted(Exchange exchange) {
+        FeedMeters meters = metersOf(exchange.getMessage().getHeader("feedId", String.class));
+        long nanos = System.nanoTime() - exchange.getProperty("downloadStartedNanos", Long.class);
+        long bytes = exchange.getProperty("downloadedBytes", 0L, Long.class);
+        meters.itemsDownloaded.increment();
+        meters.download.record(nanos, TimeUnit.NANOSECONDS);
+        meters.downloadBytes.record(bytes);
+        if (nanos > 0) {
+            meters.downloadThroughput.record(bytes * 1e9 / nanos);
+        }
+        Long timeToFirstByte = exchange.getProperty("timeToFirstByteNanos", Long.class);
+        if (timeToFirstByte != null) {
+            meters.timeToFirstByte.record(timeToFirstByte, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void downloadFinished() {
+        inFlightDownloads.decrementAndGet();
+    }
+
+    // an episode that failed after its retries and is left for the next poll
+    public void episodeFailed(Exchange exchange) {
+        metersOf(exchange.getMessage().getHeader("feedId", String.class)).itemsFailed.increment();
+    }
+
+    // counts a failed poll by the root cause of its exception
+    public void pollCompleted(Exchange exchange) {
+        Throwable failure = exchange.getException() != null ? exchange.getException() : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+        if (failure == null) {
+            return;
+        }
+        while (failure.getCause() != null && failure.getCause() != failure) {
+            failure = failure.getCause();
+        }
+        String feedId = exchange.getMessage().getHeader("feedId", String.class);
+        String stage = exchange.getProperty("pollStage", "unknown", String.class);
+        String cause = failure.getClass().getSimpleName();
+        failures.computeIfAbsent(feedId + '\n' + stage + '\n' + cause, key -> Counter.builder("podcast.failures")
+                .tag("feed", feedId)
+                .tag("stage", stage)
+                .tag("cause", cause)
+                .description("Failed polls by stage and root cause")
+                .register(registry)).increment();
+    }
+
+    private FeedMeters metersOf(String feedId) {
+        FeedMeters meters = feedMeters.get(feedId);
+        return meters != null ? meters : feedMeters.computeIfAbsent(feedId, id -> new FeedMeters(registry, id));
+    }
+
+    private static class FeedMeters {
+        final Timer fetch;
+        final DistributionSummary feedBytes;
+        final Timer parse;
+        final Counter itemsSeen;
+        final Counter itemsFiltered;
+        final Counter itemsDownloaded;
+        final Counter itemsFailed;
+        final Timer download;
+        final Timer timeToFirstByte;
+        final DistributionSummary downloadBytes;
+        final DistributionSummary downloadThroughput;
+
+        FeedMeters(MeterRegistry registry, String feedId) {
+            fetch = Timer.builder("podcast.feed.fetch").tag("feed", feedId)
+                    .description("Time until the feed responds").register(registry);
+            feedBytes = DistributionSummary.builder("podcast.feed.size").tag("feed", feedId).baseUnit("bytes")
+                    .description("Bytes of fetched feeds").register(registry);
+            parse = Timer.builder("podcast.feed.parse").tag("feed", feedId)
+                    .description("Time spent reading feed items").register(registry);
+            itemsSeen = Counter.builder("podcast.items.seen").tag("feed", feedId)
+                    .description("Feed items checked").register(registry);
+            itemsFiltered = Counter.builder("podcast.items.filtered").tag("feed", feedId)
+                    .description("Feed items already loaded, too old or older than the latest loaded one").register(registry);
+            itemsDownloaded = Counter.builder("podcast.items.downloaded").tag("feed", feedId)
+                    .description("Episodes downloaded").register(registry);
+            itemsFailed = Counter.builder("podcast.items.failed").tag("feed", feedId)
+                    .description("Episodes failed after their retries, left for the next poll").register(registry);
+            download = Timer.builder("podcast.download").tag("feed", feedId)
+                    .description("Time to download an episode").register(registry);
+            timeToFirstByte = Timer.builder("podcast.download.ttfb").tag("feed", feedId)
+                    .description("Time until the first response of an episode download").register(registry);
+            downloadBytes = DistributionSummary.builder("podcast.download.size").tag("feed", feedId).baseUnit("bytes")
+                    .description("Bytes transferred per episode download").register(registry);
+            downloadThroughput = DistributionSummary.builder("podcast.download.throughput").tag("feed", feedId).baseUnit("bytes/s")
+                    .description("Transfer rate of episode downloads").register(registry);
+        }
+    }
+
+    // adds the time spent reading items, recorded once the splitter is through with the iterator
+    private static class TimedIterator implements Iterator<FeedItem>, Closeable {
+        private final Iterator<FeedItem> items;
+        private final Timer parse;
+        private long nanos;
+        private boolean recorded;
+
+        TimedIterator(Iterator<FeedItem> items, Timer parse) {
+            this.items = items;
+            this.parse = parse;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            boolean hasNext = items.hasNext();
+            nanos += System.nanoTime() - start;
+            if (!hasNext) {
+                record();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public FeedItem next() {
+            long start = System.nanoTime();
+            FeedItem item = items.next();
+            nanos += System.nanoTime() - start;
+            return item;
+        }
+
+        @Override
+        public void close() throws IOException {
+            record();
+            if (items instanceof Closeable) {
+                ((Closeable) items).close();
+            }
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                parse.record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final DistributionSummary size;
+        private long bytes;
+        private boolean closed;
+
+        CountingInputStream(InputStream in, DistributionSummary size) {
+            super(in);
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                size.record(bytes);
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+// With pollOnce=true the app polls every feed once and exits, e.g. when started by cron or a systemd timer. The exit code
+// is 1 if a poll failed, episodes left on the dead letter list do not fail it.
+@Component
+public class PollOnceExit {
+    private final AtomicBoolean pollFailed = new AtomicBoolean();
+    private final AtomicBoolean exiting = new AtomicBoolean();
+
+    private ConfigurableApplicationContext context;
+    private FeedScheduler feedScheduler;
+    private IntConsumer exit;
+
+    @Autowired
+    public PollOnceExit(ConfigurableApplicationContext context, FeedScheduler feedScheduler) {
+        this(context, feedScheduler, System::exit);
+    }
+
+    PollOnceExit(ConfigurableApplicationContext context, FeedScheduler feedScheduler, IntConsumer exit) {
+        this.context = context;
+        this.feedScheduler = feedScheduler;
+        this.exit = exit;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void started() {
+        exitIfEveryFeedPolled(); // no feeds at all
+    }
+
+    public void pollCompleted(Exchange exchange) {
+        if (exchange.getException() != null || exchange.getProperty(Exchange.EXCEPTION_CAUGHT) != null) {
+            pollFailed.set(true);
+        }
+        exitIfEveryFeedPolled();
+    }
+
+    private void exitIfEveryFeedPolled() {
+        if (feedScheduler.isEveryFeedPolled() && exiting.compareAndSet(false, true)) {
+            // not on a route thread, closing the context waits for the routes to stop
+            new Thread(() -> exit.accept(SpringApplication.exit(context, () -> pollFailed.get() ? 1 : 0)), "PollOnceExit").start();
+        }
+    }
+}
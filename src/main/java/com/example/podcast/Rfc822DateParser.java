@@ -0,0 +1,225 @@
+package com.example.podcast;
+
+// Parses RSS dates straight into epoch millis without allocating. Besides RFC 1123 it accepts what real feeds publish:
+// a missing or full day name, 2-digit years, full month names, '-' between date fields, no seconds, fractions of a
+// second, "+01:00" offsets, North American zone names and no zone at all (UTC).
+final class Rfc822DateParser {
+    static final long Invalid = Long.MIN_VALUE;
+
+    private static final String[] MonthNames = {"january", "february", "march", "april", "may", "june",
+            "july", "august", "september", "october", "november", "december"};
+    private static final int[] DaysInMonth = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private Rfc822DateParser() {
+    }
+
+    static long parseMillis(CharSequence date) {
+        if (date == null) {
+            return Invalid;
+        }
+        int end = date.length();
+        int i = skipSpaces(date, 0, end);
+
+        // optional day of week
+        if (i < end && isLetter(date.charAt(i))) {
+            while (i < end && isLetter(date.charAt(i))) {
+                i++;
+            }
+            if (i < end && date.charAt(i) == ',') {
+                i++;
+            }
+            i = skipSpaces(date, i, end);
+        }
+
+        int start = i;
+        int day = 0;
+        for (; i < end && isDigit(date.charAt(i)); i++) {
+            day = day * 10 + date.charAt(i) - '0';
+        }
+        if (i == start || i - start > 2) {
+            return Invalid;
+        }
+        i = skipDateSeparators(date, i, end);
+
+        start = i;
+        while (i < end && isLetter(date.charAt(i))) {
+            i++;
+        }
+        int month = month(date, start, i);
+        if (month == 0) {
+            return Invalid;
+        }
+        i = skipDateSeparators(date, i, end);
+
+        start = i;
+        int year = 0;
+        for (; i < end && isDigit(date.charAt(i)); i++) {
+            year = year * 10 + date.charAt(i) - '0';
+        }
+        if (i - start == 2) {
+            year += year < 50 ? 2000 : 1900;
+        } else if (i - start != 4) {
+            return Invalid;
+        }
+        if (day < 1 || day > DaysInMonth[month - 1] || (month == 2 && day == 29 && !isLeapYear(year))) {
+            return Invalid;
+        }
+        i = skipSpaces(date, i, end);
+
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        if (i < end && isDigit(date.charAt(i))) {
+            start = i;
+            for (; i < end && isDigit(date.charAt(i)); i++) {
+                hour = hour * 10 + date.charAt(i) - '0';
+            }
+            if (i - start > 2 || i + 2 >= end || date.charAt(i) != ':' || !isDigit(date.charAt(i + 1)) || !isDigit(date.charAt(i + 2))) {
+                return Invalid;
+            }
+            minute = (date.charAt(i + 1) - '0') * 10 + date.charAt(i + 2) - '0';
+            i += 3;
+            if (i < end && date.charAt(i) == ':') {
+                if (i + 2 >= end || !isDigit(date.charAt(i + 1)) || !isDigit(date.charAt(i + 2))) {
+                    return Invalid;
+                }
+                second = (date.charAt(i + 1) - '0') * 10 + date.charAt(i + 2) - '0';
+                i += 3;
+                if (i < end && date.charAt(i) == '.') {
+                    do {
+                        i++;
+                    } while (i < end && isDigit(date.charAt(i)));
+                }
+            }
+            if (hour > 23 || minute > 59 || second > 60) {
+                return Invalid;
+            }
+            second = Math.min(second, 59); // leap second
+        }
+        i = skipSpaces(date, i, end);
+
+        int offsetMinutes = 0;
+        if (i < end && (date.charAt(i) == '+' || date.charAt(i) == '-')) {
+            int sign = date.charAt(i) == '-' ? -1 : 1;
+            i++;
+            int digits = 0;
+            int hhmm = 0;
+            for (; i < end && (isDigit(date.charAt(i)) || (date.charAt(i) == ':' && digits == 2)); i++) {
+                if (date.charAt(i) != ':') {
+                    hhmm = hhmm * 10 + date.charAt(i) - '0';
+                    digits++;
+                }
+            }
+            if (digits != 4 || hhmm % 100 > 59) {
+                return Invalid;
+            }
+            offsetMinutes = sign * (hhmm / 100 * 60 + hhmm % 100);
+        } else if (i < end && isLetter(date.charAt(i))) {
+            start = i;
+            while (i < end && isLetter(date.charAt(i))) {
+                i++;
+            }
+            offsetMinutes = zoneOffsetMinutes(date, start, i);
+            if (offsetMinutes == Integer.MIN_VALUE) {
+                return Invalid;
+            }
+        }
+        i = skipSpaces(date, i, end);
+        if (i < end && date.charAt(i) != '(') { // a trailing comment like "(CET)" is ignored
+            return Invalid;
+        }
+
+        long epochSeconds = epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offsetMinutes * 60L;
+        return epochSeconds * 1000;
+    }
+
+    // days since 1970-01-01 in the proleptic Gregorian calendar
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int month(CharSequence date, int start, int end) {
+        if (end - start < 3) {
+            return 0;
+        }
+        for (int m = 0; m < MonthNames.length; m++) {
+            String name = MonthNames[m];
+            if (regionMatches(date, start, end, name)) { // "Sep", "Sept" and "September" alike
+                return m + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int zoneOffsetMinutes(CharSequence date, int start, int end) {
+        switch (end - start) {
+            case 1:
+                return Character.toUpperCase(date.charAt(start)) == 'Z' ? 0 : Integer.MIN_VALUE;
+            case 2:
+                return regionMatches(date, start, end, "ut") ? 0 : Integer.MIN_VALUE;
+            case 3:
+                if (regionMatches(date, start, end, "gmt") || regionMatches(date, start, end, "utc")) {
+                    return 0;
+                }
+                int standard;
+                switch (Character.toUpperCase(date.charAt(start))) {
+                    case 'E': standard = -5; break;
+                    case 'C': standard = -6; break;
+                    case 'M': standard = -7; break;
+                    case 'P': standard = -8; break;
+                    default: return Integer.MIN_VALUE;
+                }
+                char daylight = Character.toUpperCase(date.charAt(start + 1));
+                if ((daylight != 'S' && daylight != 'D') || Character.toUpperCase(date.charAt(start + 2)) != 'T') {
+                    return Integer.MIN_VALUE;
+                }
+                return (daylight == 'D' ? standard + 1 : standard) * 60;
+            default:
+                return Integer.MIN_VALUE;
+        }
+    }
+
+    // case insensitive match of date[start, end) against the beginning of a lower case name
+    private static boolean regionMatches(CharSequence date, int start, int end, String name) {
+        if (end - start > name.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (Character.toLowerCase(date.charAt(i)) != name.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(CharSequence date, int i, int end) {
+        while (i < end && Character.isWhitespace(date.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipDateSeparators(CharSequence date, int i, int end) {
+        while (i < end && (date.charAt(i) == ' ' || date.charAt(i) == '-' || date.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
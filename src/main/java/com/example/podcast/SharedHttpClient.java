@@ -0,0 +1,262 @@
+package com.example.podcast;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The one java.net.http client of the app. Feeds and episodes on the same host share its pooled keep-alive connections,
+// HTTP/2 servers multiplex all requests over one. A request holds a per host permit until its body is read or dropped,
+// requests over maxConnectionsPerHost wait in line as callbacks.
+@Component
+public class SharedHttpClient {
+    private final ConcurrentMap<String, HostGate> gates = new ConcurrentHashMap<>();
+    private final AtomicLong http1Responses = new AtomicLong();
+    private final AtomicLong http2Responses = new AtomicLong();
+    private final AtomicLong tlsConnections = new AtomicLong();
+    private final AtomicInteger waitingRequests = new AtomicInteger();
+
+    private int maxConnectionsPerHost;
+    private HttpClient httpClient;
+
+    @Autowired
+    public SharedHttpClient(@Value("${connectTimeoutMillis}") int connectTimeoutMillis, @Value("${httpVersion}") HttpClient.Version version,
+                            @Value("${maxConnectionsPerHost}") int maxConnectionsPerHost, @Value("${httpKeepAliveSeconds}") int keepAliveSeconds) {
+        this(connectTimeoutMillis, version, maxConnectionsPerHost, keepAliveSeconds, defaultSslContext());
+    }
+
+    SharedHttpClient(int connectTimeoutMillis, HttpClient.Version version, int maxConnectionsPerHost, int keepAliveSeconds, SSLContext sslContext) {
+        // read once by the client's connection pool when the first client is built, a -D on the command line wins
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", Integer.toString(keepAliveSeconds));
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.httpClient = HttpClient.newBuilder()
+                .version(version) // HTTP/2 falls back to HTTP/1.1 for servers that do not offer it
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .followRedirects(HttpClient.Redirect.ALWAYS) // also between http and https
+                .sslContext(new CountingSslContext(sslContext, tlsConnections))
+                .build();
+    }
+
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        HostGate gate = gates.computeIfAbsent(Urls.hostOf(request.uri().toString()), host -> new HostGate());
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        gate.enter(() -> {
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    gate.leave();
+                }
+            };
+            CompletableFuture<HttpResponse<T>> response;
+            try {
+                response = httpClient.sendAsync(request, responseInfo -> new ReleasingSubscriber<>(handler.apply(responseInfo), release));
+            } catch (RuntimeException exc) {
+                response = CompletableFuture.failedFuture(exc);
+            }
+            response.whenComplete((sent, failure) -> {
+                if (failure != null) {
+                    release.run(); // no body is coming
+                    result.completeExceptionally(failure);
+                } else {
+                    (sent.version() == HttpClient.Version.HTTP_2 ? http2Responses : http1Responses).incrementAndGet();
+                    result.complete(sent);
+                }
+            });
+        });
+        return result;
+    }
+
+    public long responses(HttpClient.Version version) {
+        return (version == HttpClient.Version.HTTP_2 ? http2Responses : http1Responses).get();
+    }
+
+    // TLS handshakes, the requests beyond them went over a connection that was already open
+    public long tlsConnections() {
+        return tlsConnections.get();
+    }
+
+    public int waitingRequests() {
+        return waitingRequests.get();
+    }
+
+    private static SSLContext defaultSslContext() {
+        try {
+            return SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException("No default TLS context", exc);
+        }
+    }
+
+    private class HostGate {
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int active;
+
+        void enter(Runnable request) {
+            synchronized (this) {
+                if (active >= maxConnectionsPerHost) {
+                    waiting.add(request);
+                    waitingRequests.incrementAndGet();
+                    return;
+                }
+                active++;
+            }
+            request.run();
+        }
+
+        // hands the permit straight to the next request in line
+        void leave() {
+            Runnable next;
+            synchronized (this) {
+                next = waiting.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            waitingRequests.decrementAndGet();
+            next.run();
+        }
+    }
+
+    private static class ReleasingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> body;
+        private final Runnable release;
+
+        ReleasingSubscriber(HttpResponse.BodySubscriber<T> body, Runnable release) {
+            this.body = body;
+            this.release = release;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return body.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            body.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                    release.run();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            body.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            release.run();
+            body.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            release.run();
+            body.onComplete();
+        }
+    }
+
+    // the client opens one SSLEngine per TLS connection, counting them tells how often a connection was reused
+    private static class CountingSslContext extends SSLContext {
+        CountingSslContext(SSLContext delegate, AtomicLong engines) {
+            super(new CountingSslContextSpi(delegate, engines), delegate.getProvider(), delegate.getProtocol());
+        }
+    }
+
+    private static class CountingSslContextSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final AtomicLong engines;
+
+        CountingSslContextSpi(SSLContext delegate, AtomicLong engines) {
+            this.delegate = delegate;
+            this.engines = engines;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom random) throws KeyManagementException {
+            throw new KeyManagementException("Already initialized");
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            engines.incrementAndGet();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            engines.incrementAndGet();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
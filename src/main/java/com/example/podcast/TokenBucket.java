@@ -0,0 +1,26 @@
+package com.example.podcast;
+
+// A rate in bytes per second with a burst of one second. Bytes are taken on credit and the caller learns how long to
+// pause until the debt is paid, so a transfer is slowed down by asking for data later rather than by a sleeping thread.
+final class TokenBucket {
+    private final long bytesPerSecond;
+    private double tokens;
+    private long refilledNanos;
+
+    TokenBucket(long bytesPerSecond, long nowNanos) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+        this.refilledNanos = nowNanos;
+    }
+
+    // nanos to wait before the next transfer
+    synchronized long take(long bytes, long nowNanos) {
+        long elapsed = nowNanos - refilledNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(bytesPerSecond, tokens + elapsed * (bytesPerSecond / 1e9));
+            refilledNanos = nowNanos;
+        }
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+    }
+}
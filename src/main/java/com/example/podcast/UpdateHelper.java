@@ -1,50 +1,106 @@
 package com.example.podcast;
 
 import org.apache.camel.language.simple.Simple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.DateTimeException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class UpdateHelper {
-    private final ZonedDateTime startOfTime = ZonedDateTime.ofInstant(Instant.EPOCH, ZoneId.systemDefault());
+    private static final Logger log = LoggerFactory.getLogger(UpdateHelper.class);
+
+    private final long startOfTime = Instant.EPOCH.toEpochMilli();
+    private final ConcurrentMap<String, AtomicLong> latestPodcastDates = new ConcurrentHashMap<>(); // epoch millis per feed
 
     private int notOlderThanDays;
-    private ZonedDateTime latestPodcastDate;
+    private GuidIndex guidIndex;
 
     @Autowired
-    public UpdateHelper(@Value("${notOlderThanDays}") int notOlderThanDays) {
+    public UpdateHelper(@Value("${notOlderThanDays}") int notOlderThanDays, GuidIndex guidIndex) {
         this.notOlderThanDays = notOlderThanDays;
-        this.latestPodcastDate = startOfTime;
+        this.guidIndex = guidIndex;
     }
 
-    public boolean isSuitablePublication(@Simple("${header.publicationDate}") String publicationDate, @Simple("${header.latestLoadedPodcastDate}") String needNewerThan) {
-        try {
-            ZonedDateTime currentPodcastDate = ZonedDateTime.parse(publicationDate, DateTimeFormatter.RFC_1123_DATE_TIME);
-            ZonedDateTime needNewerThanDate = needNewerThan != null ? ZonedDateTime.parse(needNewerThan, DateTimeFormatter.RFC_1123_DATE_TIME) : startOfTime;
+    // the thresholds are computed once per poll, items are then compared with them without parsing or allocating
+    public long needNewerThanMillis(@Simple("${header.latestLoadedPodcastDate}") String needNewerThan) {
+        long needNewerThanMillis = Rfc822DateParser.parseMillis(needNewerThan);
+        return needNewerThanMillis != Rfc822DateParser.Invalid ? needNewerThanMillis : startOfTime;
+    }
 
-            if (needNewerThanDate.compareTo(this.latestPodcastDate) > 0) {
-                this.latestPodcastDate = needNewerThanDate;
-            }
-            if (currentPodcastDate.compareTo(this.latestPodcastDate) > 0) {
-                this.latestPodcastDate = currentPodcastDate;
-            }
+    public long notOlderThanMillis() {
+        return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(notOlderThanDays);
+    }
 
-            ZonedDateTime notOlderThanDate = ZonedDateTime.now().minusDays(this.notOlderThanDays);
-            return (currentPodcastDate.compareTo(notOlderThanDate) >= 0 && currentPodcastDate.compareTo(needNewerThanDate) > 0);
-        } catch (DateTimeException exc) {
-            System.out.println("Date parsing failed: " + exc.getMessage());
+    public boolean isSuitablePublication(@Simple("${header.feedId}") String feedId, @Simple("${header.guid}") String guid,
+                                         @Simple("${header.publicationDate}") String publicationDate,
+                                         @Simple("${header.needNewerThanMillis}") long needNewerThanMillis,
+                                         @Simple("${header.notOlderThanMillis}") long notOlderThanMillis) {
+        if (guid != null && guidIndex.contains(feedId, guid)) {
+            return false;
+        }
+        long currentPodcastMillis = Rfc822DateParser.parseMillis(publicationDate);
+        if (currentPodcastMillis == Rfc822DateParser.Invalid) {
+            log.warn("Podcast {} of feed {} has a publication date that cannot be parsed, loading it anyway: {}", guid, feedId, publicationDate);
             return true;
         }
+        boolean guidsTracked = guid != null && guidIndex.isTracked(feedId);
+
+        boolean newerThanLatest = currentPodcastMillis > needNewerThanMillis;
+        if (!newerThanLatest && guid != null && !guidsTracked) {
+            try {
+                guidIndex.adopt(feedId, guid); // loaded or skipped before its guids were tracked
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+        }
+
+        // once guids are tracked they alone tell what was loaded, so back-dated episodes are not missed
+        boolean suitable = currentPodcastMillis >= notOlderThanMillis && (newerThanLatest || guidsTracked);
+        // a suitable episode raises the mark only once it is loaded, a failed one is tried again by the next poll
+        raiseLatestPodcastDate(feedId, suitable ? needNewerThanMillis : Math.max(needNewerThanMillis, currentPodcastMillis));
+        return suitable;
+    }
+
+    // the episode is in its destination folder
+    public void episodeLoaded(@Simple("${header.feedId}") String feedId, @Simple("${header.guid}") String guid,
+                              @Simple("${header.publicationDate}") String publicationDate) throws IOException {
+        if (guid != null) {
+            guidIndex.add(feedId, guid);
+        }
+        long publicationMillis = Rfc822DateParser.parseMillis(publicationDate);
+        if (publicationMillis != Rfc822DateParser.Invalid) {
+            raiseLatestPodcastDate(feedId, publicationMillis);
+        }
     }
 
-    public String getLatestPodcastDate() {
-        return this.latestPodcastDate.format(DateTimeFormatter.RFC_1123_DATE_TIME);
+    public String getLatestPodcastDate(@Simple("${header.feedId}") String feedId) {
+        AtomicLong latest = latestPodcastDates.get(feedId);
+        long latestMillis = latest != null ? latest.get() : startOfTime;
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(latestMillis), ZoneId.systemDefault()).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+    }
+
+    private void raiseLatestPodcastDate(String feedId, long dateMillis) {
+        AtomicLong latest = latestPodcastDates.get(feedId);
+        if (latest == null) {
+            latest = latestPodcastDates.computeIfAbsent(feedId, id -> new AtomicLong(startOfTime));
+        }
+        // CAS max-update: only contended writers that actually raise the mark retry
+        long current = latest.get();
+        while (dateMillis > current && !latest.compareAndSet(current, dateMillis)) {
+            current = latest.get();
+        }
     }
 }
@@ -4,17 +4,11 @@ import org.springframework.stereotype.Service;
 
 @Service
 public class UrlProvider {
-    private final String stateFileName = "latestLoadedPodcastDate.txt";
+    public String getSchedulerUrl() { return "timer:feedScheduler?period={{schedulerTick}}&delay={{schedulerDelay}}"; }
 
-    public String getStateFileInUrl() { return "file:target/rss?fileName=" + stateFileName + "&noop=true&idempotent=false&sendEmptyMessageWhenIdle=true&delay=5m"; }
-
-    public String getStateFileOutUrl() { return "file:target/rss?fileName=" + stateFileName; }
-
-    public String getRssFeedUrl() {
-        return "{{rssURL}}";
-    }
+    public String getFeedPollUrl() { return "seda:pollFeed?concurrentConsumers={{feedPollThreads}}&size={{feedPollQueueSize}}&blockWhenFull=true"; }
 
     public String getDestFolderUrl() {
-        return "file:{{destFolder}}";
+        return "bean:episodeStore?method=store"; // links the episode into ${header.destFolder}
     }
 }
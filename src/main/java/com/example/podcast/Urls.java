@@ -0,0 +1,19 @@
+package com.example.podcast;
+
+import java.net.URI;
+
+// Helpers for the urls of feeds and episodes.
+final class Urls {
+    private Urls() {
+    }
+
+    // the host that per host limits, buckets and circuits are kept for, lower case
+    static String hostOf(String url) {
+        try {
+            URI uri = URI.create(url);
+            return uri.getHost() != null ? uri.getHost().toLowerCase() : String.valueOf(uri.getScheme());
+        } catch (IllegalArgumentException exc) {
+            return "";
+        }
+    }
+}
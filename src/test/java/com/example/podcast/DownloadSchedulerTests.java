@@ -0,0 +1,90 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DownloadSchedulerTests {
+    private static final ZonedDateTime Now = ZonedDateTime.now(ZoneOffset.UTC);
+
+    private final List<String> started = new ArrayList<>();
+
+    @Test
+    void waitingEpisodes_shouldStart_heavierFeedsFirst_thenNewestFirst() {
+        DownloadScheduler scheduler = new DownloadScheduler(new HostConcurrencyLimiter(10), 1, 100);
+        assertThat(submit(scheduler, "first", 1, 0)).isTrue();
+
+        submit(scheduler, "old", 1, 3);
+        submit(scheduler, "new", 1, 1);
+        submit(scheduler, "preferred", 5, 10);
+        assertThat(started).containsExactly("first");
+        assertThat(scheduler.queueSize()).isEqualTo(3);
+
+        scheduler.release("https://cdn.test/first.mp3");
+        scheduler.release("https://cdn.test/preferred.mp3");
+        scheduler.release("https://cdn.test/new.mp3");
+        assertThat(started).containsExactly("first", "preferred", "new", "old");
+        assertThat(scheduler.queueSize()).isZero();
+    }
+
+    @Test
+    void episodeOfBusyHost_shouldNotHoldBackOtherHosts() {
+        DownloadScheduler scheduler = new DownloadScheduler(new HostConcurrencyLimiter(1), 2, 100);
+        submit(scheduler, "first", 1, 0);
+
+        assertThat(submit(scheduler, "second", 1, 0)).isFalse();
+        assertThat(submit(scheduler, "https://other.test/third.mp3", 1, 1)).isTrue();
+        assertThat(started).containsExactly("first", "https://other.test/third.mp3");
+
+        scheduler.release("https://cdn.test/first.mp3");
+        assertThat(started).containsExactly("first", "https://other.test/third.mp3", "second");
+    }
+
+    @Test
+    void episode_shouldBeQueuedWithoutWaiting_ifTheQueueIsFull() {
+        DownloadScheduler scheduler = new DownloadScheduler(new HostConcurrencyLimiter(10), 1, 1);
+        submit(scheduler, "first", 1, 0);
+        submit(scheduler, "second", 1, 0);
+
+        assertThat(submit(scheduler, "retried", 1, 0)).isFalse(); // e.g. handed in by the redelivery timer
+        assertThat(scheduler.queueSize()).isEqualTo(2);
+    }
+
+    @Test
+    void feedReader_shouldBeHeldBack_whileTheQueueIsFull() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(new HostConcurrencyLimiter(10), 1, 1);
+        submit(scheduler, "first", 1, 0);
+        submit(scheduler, "second", 1, 0);
+        Iterator<String> items = scheduler.admit(Collections.singletonList("third").iterator());
+
+        CompletableFuture<Boolean> nextItem = CompletableFuture.supplyAsync(items::hasNext);
+        assertThatThrownBy(() -> nextItem.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+        scheduler.release("https://cdn.test/first.mp3");
+        assertThat(nextItem.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(items.next()).isEqualTo("third");
+    }
+
+    private boolean submit(DownloadScheduler scheduler, String episode, int weight, int daysOld) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("enclosureUrl", episode.startsWith("https:") ? episode : "https://cdn.test/" + episode + ".mp3");
+        exchange.getIn().setHeader("downloadWeight", weight);
+        exchange.getIn().setHeader("publicationDate", Now.minusDays(daysOld).format(DateTimeFormatter.RFC_1123_DATE_TIME));
+        return scheduler.process(exchange, doneSync -> started.add(episode));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpisodeDownloaderTests {
+    private static final Path WorkFolder = Paths.get("target", "test-downloader-work");
+    private static final Path PartFile = WorkFolder.resolve("feed").resolve("podcast.mp3.part");
+
+    private final SharedHttpClient httpClient = new SharedHttpClient(1000, HttpClient.Version.HTTP_2, 8, 300);
+    private StubHttpServer server;
+    private byte[] episode;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(WorkFolder);
+        episode = new byte[100_000];
+        new Random(42).nextBytes(episode);
+        server = new StubHttpServer();
+        server.resource("/podcast.mp3", episode);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void episode_shouldBeStreamedToWorkFile() throws Exception {
+        Exchange exchange = download(new EpisodeDownloader(WorkFolder.toString(), 1000, Long.MAX_VALUE, 1, new BandwidthLimiter(0, 0), httpClient));
+
+        assertThat(exchange.getIn().getBody(File.class).toPath()).isEqualTo(PartFile);
+        assertThat(exchange.getIn().getHeader(Exchange.FILE_LOCAL_WORK_PATH, File.class).toPath()).isEqualTo(PartFile);
+        assertThat(Files.readAllBytes(PartFile)).isEqualTo(episode);
+        assertThat(exchange.getIn().getHeader("contentHash")).isEqualTo(EpisodeStore.contentHash(PartFile));
+        assertThat(exchange.getProperty("enclosureRequested")).isEqualTo(true); // tells the circuit breaker the host answered
+    }
+
+    @Test
+    void episode_shouldBeSetOnTheMessageTheRouteGoesOnWith_ofAnInOutExchange() throws Exception {
+        Exchange exchange = exchange();
+        exchange.setPattern(ExchangePattern.InOut);
+
+        download(new EpisodeDownloader(WorkFolder.toString(), 1000, Long.MAX_VALUE, 1, new BandwidthLimiter(0, 0), httpClient), exchange);
+
+        assertThat(exchange.getMessage().getBody(File.class).toPath()).isEqualTo(PartFile);
+        assertThat(exchange.getMessage().getHeader("contentHash")).isEqualTo(EpisodeStore.contentHash(PartFile));
+    }
+
+    @Test
+    void interruptedDownload_shouldBeResumed_withoutFetchingLoadedBytesAgain() throws Exception {
+        Files.createDirectories(PartFile.getParent());
+        Files.write(PartFile, Arrays.copyOf(episode, 30_000));
+
+        Exchange exchange = download(new EpisodeDownloader(WorkFolder.toString(), 1000, Long.MAX_VALUE, 1, new BandwidthLimiter(0, 0), httpClient));
+
+        assertThat(server.lastRequestHeader("/podcast.mp3", "Range")).isEqualTo("bytes=30000-");
+        assertThat(server.bytesSent()).isEqualTo(70_000);
+        assertThat(Files.readAllBytes(PartFile)).isEqualTo(episode);
+        assertThat(exchange.getIn().getHeader("contentHash")).isEqualTo(EpisodeStore.contentHash(PartFile));
+    }
+
+    @Test
+    void interruptedDownload_shouldStartOver_ifServerDoesNotSupportRanges() throws Exception {
+        Files.createDirectories(PartFile.getParent());
+        Files.write(PartFile, new byte[30_000]);
+        server.rangesSupported(false);
+
+        download(new EpisodeDownloader(WorkFolder.toString(), 1000, Long.MAX_VALUE, 1, new BandwidthLimiter(0, 0), httpClient));
+
+        assertThat(Files.readAllBytes(PartFile)).isEqualTo(episode);
+    }
+
+    @Test
+    void largeEpisode_shouldBeLoadedInParallelRanges() throws Exception {
+        Exchange exchange = download(new EpisodeDownloader(WorkFolder.toString(), 1000, 50_000, 4, new BandwidthLimiter(0, 0), httpClient));
+
+        assertThat(server.requestCount("/podcast.mp3")).isEqualTo(5); // the first byte to learn the length, then 4 segments
+        assertThat(server.bytesSent()).isEqualTo(1 + episode.length);
+        assertThat(Files.readAllBytes(PartFile)).isEqualTo(episode);
+        assertThat(Files.list(PartFile.getParent())).containsExactly(PartFile);
+        assertThat(exchange.getIn().getHeader("contentHash")).isEqualTo(EpisodeStore.contentHash(PartFile));
+    }
+
+    @Test
+    void storedEnclosure_shouldNotBeDownloaded_ifItsETagStillMatches() throws Exception {
+        server.eTag("/podcast.mp3", "\"v1\"");
+        Exchange exchange = exchange();
+        exchange.getIn().setHeader("knownEnclosureETag", "\"v1\"");
+        exchange.getIn().setHeader("knownContentHash", "0123");
+
+        download(new EpisodeDownloader(WorkFolder.toString(), 1000, Long.MAX_VALUE, 1, new BandwidthLimiter(0, 0), httpClient), exchange);
+
+        assertThat(exchange.getProperty("contentKnown")).isEqualTo(true);
+        assertThat(exchange.getIn().getHeader("contentHash")).isEqualTo("0123");
+        assertThat(server.bytesSent()).isZero();
+        assertThat(PartFile).doesNotExist();
+    }
+
+    @Test
+    void download_shouldBeSlowedDown_toBandwidthLimit() throws Exception {
+        long start = System.nanoTime();
+        download(new EpisodeDownloader(WorkFolder.toString(), 1000, Long.MAX_VALUE, 1, new BandwidthLimiter(0, 50_000), httpClient));
+
+        // a burst of one second worth of bytes, the other 50000 bytes take another second
+        assertThat(System.nanoTime() - start).isGreaterThan(800_000_000L);
+        assertThat(Files.readAllBytes(PartFile)).isEqualTo(episode);
+    }
+
+    private Exchange download(EpisodeDownloader downloader) throws Exception {
+        return download(downloader, exchange());
+    }
+
+    private Exchange exchange() {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("enclosureUrl", server.url("/podcast.mp3"));
+        exchange.getIn().setHeader("feedId", "feed");
+        exchange.getIn().setHeader(Exchange.FILE_NAME, "podcast.mp3");
+        return exchange;
+    }
+
+    private Exchange download(EpisodeDownloader downloader, Exchange exchange) throws Exception {
+        try {
+            downloader.download(exchange);
+        } finally {
+            downloader.shutdown();
+        }
+        return exchange;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class EpisodeStoreTests {
+    @TempDir
+    Path folder;
+
+    @Test
+    void sameEpisode_shouldBeStoredOnce_andLinkedIntoEveryFeed() throws IOException {
+        EpisodeStore store = new EpisodeStore(folder.resolve("blobs"), folder.resolve("enclosures.txt"));
+
+        store.store(downloaded("feed1", "guid1.mp3", "https://cdn1/episode.mp3", "123"));
+        store.store(downloaded("feed2", "guid2.mp3", "https://cdn2/episode.mp3", "123"));
+
+        Path first = folder.resolve("feed1").resolve("guid1.mp3");
+        Path second = folder.resolve("feed2").resolve("guid2.mp3");
+        assertThat(first).hasContent("123");
+        assertThat(Files.isSameFile(first, second)).isTrue();
+        try (Stream<Path> blobs = Files.walk(folder.resolve("blobs"))) {
+            assertThat(blobs.filter(Files::isRegularFile)).hasSize(1);
+        }
+        try (Stream<Path> work = Files.list(folder.resolve("work"))) {
+            assertThat(work).isEmpty();
+        }
+    }
+
+    @Test
+    void storedEnclosure_shouldBeKnown_byUrlAndLengthOrETag() throws IOException {
+        Exchange stored = downloaded("feed1", "guid1.mp3", "https://cdn/episode.mp3", "123");
+        stored.getIn().setHeader("enclosureETag", "\"v1\"");
+        new EpisodeStore(folder.resolve("blobs"), folder.resolve("enclosures.txt")).store(stored);
+        EpisodeStore store = new EpisodeStore(folder.resolve("blobs"), folder.resolve("enclosures.txt")); // read back from the index
+
+        Exchange sameLength = episode("feed2", "guid2.mp3", "https://cdn/episode.mp3");
+        sameLength.getIn().setHeader("enclosureLength", 3L);
+        store.findKnown(sameLength);
+        assertThat(sameLength.getProperty("contentKnown")).isEqualTo(true);
+        store.store(sameLength);
+        assertThat(folder.resolve("feed2").resolve("guid2.mp3")).hasContent("123");
+
+        Exchange lengthUnknown = episode("feed3", "guid3.mp3", "https://cdn/episode.mp3");
+        store.findKnown(lengthUnknown);
+        assertThat(lengthUnknown.getProperty("contentKnown")).isNull();
+        assertThat(lengthUnknown.getIn().getHeader("knownEnclosureETag")).isEqualTo("\"v1\"");
+
+        Exchange otherUrl = episode("feed3", "guid4.mp3", "https://cdn/other.mp3");
+        otherUrl.getIn().setHeader("enclosureLength", 3L);
+        store.findKnown(otherUrl);
+        assertThat(otherUrl.getProperty("contentKnown")).isNull();
+    }
+
+    @Test
+    void episode_shouldBeStored_ifBlobFolderIsOnAnotherFileSystem() throws IOException {
+        Path blobFolder = Paths.get("/dev/shm", "episode-store-blobs");
+        assumeTrue(Files.isWritable(blobFolder.getParent()) && !Files.getFileStore(blobFolder.getParent()).equals(Files.getFileStore(folder)));
+        FileSystemUtils.deleteRecursively(blobFolder);
+        try {
+            EpisodeStore store = new EpisodeStore(blobFolder, folder.resolve("enclosures.txt"));
+
+            store.store(downloaded("feed1", "guid1.mp3", "https://cdn/episode.mp3", "123"));
+
+            assertThat(folder.resolve("feed1").resolve("guid1.mp3")).hasContent("123"); // copied, a link cannot cross either
+            try (Stream<Path> work = Files.list(folder.resolve("work"))) {
+                assertThat(work).isEmpty();
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(blobFolder);
+        }
+    }
+
+    @Test
+    void episodeWithoutFileOrHash_shouldFail() throws IOException {
+        EpisodeStore store = new EpisodeStore(folder.resolve("blobs"), folder.resolve("enclosures.txt"));
+
+        assertThatThrownBy(() -> store.store(episode("feed1", "guid1.mp3", "https://cdn/episode.mp3")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("guid1.mp3");
+    }
+
+    @Test
+    void index_shouldKeepOneLinePerUrl_afterRestart() throws IOException {
+        EpisodeStore store = new EpisodeStore(folder.resolve("blobs"), folder.resolve("enclosures.txt"));
+        for (int version = 1; version <= 3; version++) {
+            Exchange stored = downloaded("feed1", "guid1.mp3", "https://cdn/episode.mp3", "content" + version);
+            stored.getIn().setHeader("enclosureETag", "\"v" + version + "\"");
+            store.store(stored);
+        }
+        store.store(downloaded("feed1", "guid2.mp3", "https://cdn/other.mp3", "other"));
+        assertThat(Files.readAllLines(folder.resolve("enclosures.txt"))).hasSize(4);
+
+        store = new EpisodeStore(folder.resolve("blobs"), folder.resolve("enclosures.txt"));
+
+        assertThat(Files.readAllLines(folder.resolve("enclosures.txt"))).hasSize(2);
+        Exchange known = episode("feed2", "guid1.mp3", "https://cdn/episode.mp3");
+        store.findKnown(known);
+        assertThat(known.getIn().getHeader("knownEnclosureETag")).isEqualTo("\"v3\"");
+    }
+
+    private Exchange downloaded(String feedId, String fileName, String url, String content) throws IOException {
+        Path workFile = folder.resolve("work").resolve(feedId + "-" + fileName + ".part");
+        Files.createDirectories(workFile.getParent());
+        Files.write(workFile, content.getBytes(StandardCharsets.UTF_8));
+        Exchange exchange = episode(feedId, fileName, url);
+        exchange.getIn().setBody(workFile.toFile());
+        exchange.getIn().setHeader("contentHash", EpisodeStore.contentHash(workFile));
+        return exchange;
+    }
+
+    private Exchange episode(String feedId, String fileName, String url) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("destFolder", folder.resolve(feedId).toString());
+        exchange.getIn().setHeader(Exchange.FILE_NAME, fileName);
+        exchange.getIn().setHeader("enclosureUrl", url);
+        return exchange;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedCadenceTests {
+    private static final long Hour = Duration.ofHours(1).toMillis();
+    private static final long Day = Duration.ofDays(1).toMillis();
+    private static final long Min = Duration.ofMinutes(5).toMillis();
+    private static final long Max = Day;
+    private static final long Latest = Instant.parse("2021-05-03T06:00:00Z").toEpochMilli();
+    private static final long[] Daily = {Latest, Latest - Day, Latest - 2 * Day, Latest - 3 * Day};
+
+    @Test
+    void dailyFeed_shouldSleep_untilNextEpisodeIsAlmostDue() {
+        assertThat(FeedCadence.nextPollDelayMillis(Daily, Latest + Hour, Min, Max)).isEqualTo(17 * Hour);
+    }
+
+    @Test
+    void dailyFeed_shouldBePolledOften_whileNextEpisodeIsDue() {
+        assertThat(FeedCadence.nextPollDelayMillis(Daily, Latest + 20 * Hour, Min, Max)).isEqualTo(Min);
+        assertThat(FeedCadence.nextPollDelayMillis(Daily, Latest + 30 * Hour, Min, Max)).isEqualTo(Min);
+    }
+
+    @Test
+    void quietFeed_shouldBackOff_uptoMaxPollInterval() {
+        assertThat(FeedCadence.nextPollDelayMillis(Daily, Latest + 4 * Day, Min, Max)).isEqualTo(12 * Hour);
+        assertThat(FeedCadence.nextPollDelayMillis(Daily, Latest + 30 * Day, Min, Max)).isEqualTo(Max);
+    }
+
+    @Test
+    void configuredInterval_shouldStay_untilEnoughIsKnown() {
+        assertThat(FeedCadence.nextPollDelayMillis(new long[]{Latest, Latest - Day}, Latest + Hour, Min, Max)).isEqualTo(-1);
+    }
+
+    @Test
+    void pollInSkipHours_shouldMovePastThem() {
+        int skipHoursMask = 1 << 7 | 1 << 8;
+        assertThat(FeedCadence.skipHours(Latest + Hour + 60_000, skipHoursMask)).isEqualTo(Latest + 3 * Hour);
+        assertThat(FeedCadence.skipHours(Latest + 30 * 60_000, skipHoursMask)).isEqualTo(Latest + 30 * 60_000);
+    }
+
+    @Test
+    void pollInterval_shouldStay_ifPublishHistoryCannotBeSaved() throws Exception {
+        Path stateFile = Paths.get("target", "feed-cadence-state");
+        Files.deleteIfExists(stateFile);
+        Files.createDirectories(stateFile.getParent());
+        Files.createFile(stateFile); // no feed folder can be created in it
+        FeedCadence cadence = new FeedCadence(new FeedStateStore(stateFile.toString()), true, Duration.ofMillis(Min), Duration.ofMillis(Max), 0);
+
+        List<FeedItem> items = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String pubDate = ZonedDateTime.now(ZoneOffset.UTC).minusDays(i).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+            items.add(new FeedItem("podcast" + i, pubDate, "https://cdn.test/podcast" + i + ".mp3", -1, null));
+        }
+        for (Iterator<FeedItem> observed = cadence.observe("test", items.iterator()); observed.hasNext(); ) {
+            observed.next();
+        }
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("feedId", "test");
+
+        cadence.pollCompleted(exchange);
+
+        assertThat(exchange.getProperty("nextPollDelayMillis")).isNull();
+    }
+
+    @Test
+    void maxAge_shouldBeReadFromCacheControl() {
+        assertThat(FeedCadence.maxAgeMillis("public, max-age=3600")).isEqualTo(Hour);
+        assertThat(FeedCadence.maxAgeMillis("s-maxage=60, no-cache")).isZero();
+        assertThat(FeedCadence.maxAgeMillis(null)).isZero();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedFetcherTests {
+    private static final Path WorkFolder = Paths.get("target", "feed-fetcher-work");
+
+    private StubHttpServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(WorkFolder);
+        server = new StubHttpServer();
+        server.resource("/feed.rss", "<rss/>".getBytes(StandardCharsets.UTF_8));
+        server.redirect("/moved.rss", server.url("/feed.rss"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void feed_shouldBeFetchedWithConditionalGetHeaders() throws Exception {
+        Exchange exchange = fetch("/moved.rss", "\"v1\"");
+
+        assertThat(exchange.getException()).isNull();
+        try (InputStream body = exchange.getIn().getBody(InputStream.class)) {
+            assertThat(StreamUtils.copyToString(body, StandardCharsets.UTF_8)).isEqualTo("<rss/>");
+        }
+        assertThat(server.lastRequestHeader("/feed.rss", "If-None-Match")).isEqualTo("\"v1\"");
+        assertThat(WorkFolder).isEmptyDirectory(); // the work file goes with the parsed feed
+    }
+
+    @Test
+    void feedBeingParsed_shouldNotHoldItsHostSlot() throws Exception {
+        SharedHttpClient httpClient = new SharedHttpClient(1000, HttpClient.Version.HTTP_2, 1, 300);
+        Exchange parsed = fetch(exchange("/feed.rss", null), httpClient);
+
+        Exchange next = fetch(exchange("/feed.rss", null), httpClient); // e.g. an episode of the feed on the same host
+
+        assertThat(next.getException()).isNull();
+        parsed.getIn().getBody(InputStream.class).close();
+        next.getIn().getBody(InputStream.class).close();
+    }
+
+    @Test
+    void feed_shouldBeSetOnTheMessageTheRouteGoesOnWith_ofAnInOutExchange() throws Exception {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext(), ExchangePattern.InOut);
+        exchange.getIn().setHeader("rssUrl", server.url("/feed.rss"));
+        fetch(exchange);
+
+        try (InputStream body = exchange.getMessage().getBody(InputStream.class)) {
+            assertThat(StreamUtils.copyToString(body, StandardCharsets.UTF_8)).isEqualTo("<rss/>");
+        }
+    }
+
+    @Test
+    void missingFeed_shouldFailWithStatusCode() throws Exception {
+        Exchange exchange = fetch("/missing.rss", null);
+
+        assertThat(exchange.getException()).isInstanceOf(HttpOperationFailedException.class);
+        assertThat(((HttpOperationFailedException) exchange.getException()).getStatusCode()).isEqualTo(404);
+        assertThat(WorkFolder).isEmptyDirectory();
+    }
+
+    private Exchange fetch(String path, String eTag) throws InterruptedException {
+        return fetch(exchange(path, eTag));
+    }
+
+    private Exchange exchange(String path, String eTag) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("rssUrl", server.url(path));
+        exchange.getIn().setHeader("If-None-Match", eTag);
+        return exchange;
+    }
+
+    private Exchange fetch(Exchange exchange) throws InterruptedException {
+        return fetch(exchange, new SharedHttpClient(1000, HttpClient.Version.HTTP_2, 8, 300));
+    }
+
+    private Exchange fetch(Exchange exchange, SharedHttpClient httpClient) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        new FeedFetcher(WorkFolder.toString(), 1000, httpClient).process(exchange, doneSync -> done.countDown());
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        return exchange;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedParserTests {
+    @TempDir
+    Path stateFolder;
+
+    private static String testRssTemplate;
+    private static String today;
+    private static String minus2days;
+    private static String minus3days;
+    private static String minus5days;
+
+    @BeforeAll
+    public static void beforeAllTestMethods() throws IOException {
+        testRssTemplate = new String(Files.readAllBytes(Paths.get("src", "test", "resources", "TestRssFeed.xml")), StandardCharsets.UTF_8);
+        today = ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        minus2days = ZonedDateTime.now().minusDays(2).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        minus3days = ZonedDateTime.now().minusDays(3).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        minus5days = ZonedDateTime.now().minusDays(5).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+    }
+
+    @Test
+    void allItems_shouldBeRead_ifNoLatestLoadedPodcastDate() {
+        List<FeedItem> items = parse(feed(today, minus2days, minus5days), null);
+
+        assertThat(items).hasSize(3);
+        FeedItem first = items.get(0);
+        assertThat(first.getGuid()).isEqualTo("podcast1");
+        assertThat(first.getPubDate()).isEqualTo(today);
+        assertThat(first.getEnclosureUrl()).isEqualTo("https://test/podcast1.mp3");
+        assertThat(first.getEnclosureLength()).isEqualTo(27969720L);
+        assertThat(first.getEnclosureType()).isEqualTo("audio/mpeg");
+        assertThat(items.get(2).getGuid()).isEqualTo("podcast3");
+    }
+
+    @Test
+    void reading_shouldStop_atFirstItemNotNewerThanLatestLoadedPodcast() {
+        List<FeedItem> items = parse(feed(today, minus5days, minus2days), minus3days);
+
+        assertThat(items).extracting(FeedItem::getGuid).containsExactly("podcast1", "podcast2");
+    }
+
+    @Test
+    void allItems_shouldBeRead_ifFeedIsNotOrderedNewestFirst() {
+        List<FeedItem> items = parse(feed(minus2days, today, minus5days), minus3days);
+
+        assertThat(items).extracting(FeedItem::getGuid).containsExactly("podcast1", "podcast2", "podcast3");
+    }
+
+    @Test
+    void allItems_shouldBeRead_ifFeedIsOrderedOldestFirst() {
+        assertThat(parse(feed(minus5days, minus2days, today), minus3days)).extracting(FeedItem::getGuid).containsExactly("podcast1", "podcast2", "podcast3");
+        assertThat(parse(feed(minus5days, minus2days, today), null, "podcast1")).extracting(FeedItem::getGuid).containsExactly("podcast1", "podcast2", "podcast3");
+    }
+
+    @Test
+    void reading_shouldStop_atGuidCursor() {
+        List<FeedItem> items = parse(feed(today, minus2days, minus5days), null, "podcast2");
+
+        assertThat(items).extracting(FeedItem::getGuid).containsExactly("podcast1", "podcast2");
+    }
+
+    @Test
+    void feed_shouldBeReadIncrementally_onlyOnceFoundNewestFirst() throws IOException {
+        FeedStateStore feedStateStore = new FeedStateStore(stateFolder.toString());
+        FeedParser feedParser = new FeedParser(true, 24);
+
+        assertThat(poll(feedParser, feedStateStore, feed(today, minus2days, minus5days), minus3days)).hasSize(3); // order not known yet
+        assertThat(poll(feedParser, feedStateStore, feed(today, minus2days, minus5days), minus3days))
+                .extracting(FeedItem::getGuid).containsExactly("podcast1", "podcast2"); // stops past the guid cursor, once ordered
+    }
+
+    @Test
+    void feed_shouldBeReadInFull_whileNotNewestFirst() throws IOException {
+        FeedStateStore feedStateStore = new FeedStateStore(stateFolder.toString());
+        FeedParser feedParser = new FeedParser(true, 24);
+
+        assertThat(poll(feedParser, feedStateStore, feed(minus5days, minus2days, today), minus3days)).hasSize(3);
+        assertThat(poll(feedParser, feedStateStore, feed(minus5days, minus2days, today), minus3days)).hasSize(3);
+    }
+
+    @Test
+    void feed_shouldBeReadInFull_everyFullScanEveryPolls() throws IOException {
+        FeedStateStore feedStateStore = new FeedStateStore(stateFolder.toString());
+        FeedParser feedParser = new FeedParser(true, 2);
+
+        assertThat(poll(feedParser, feedStateStore, feed(today, minus2days, minus5days), null)).hasSize(3);
+        assertThat(poll(feedParser, feedStateStore, feed(today, minus2days, minus5days), null)).hasSize(2);
+        assertThat(poll(feedParser, feedStateStore, feed(today, minus2days, minus5days), null)).hasSize(2);
+        assertThat(poll(feedParser, feedStateStore, feed(today, minus2days, minus5days), null)).hasSize(3);
+    }
+
+    @Test
+    void channelPollingHints_shouldBeRead() {
+        String feed = "<rss><channel><ttl>60</ttl><skipHours><hour>0</hour><hour>23</hour></skipHours>"
+                + "<item><guid>podcast1</guid></item></channel></rss>";
+        FeedParser.FeedItemIterator iterator = new FeedParser().parse(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), null, null);
+        iterator.forEachRemaining(item -> { });
+
+        assertThat(iterator.getTtlMinutes()).isEqualTo(60);
+        assertThat(iterator.getSkipHoursMask()).isEqualTo(1 | 1 << 23);
+    }
+
+    private static String feed(String pubDate1, String pubDate2, String pubDate3) {
+        return testRssTemplate
+                .replace("%PUBDATE1%", pubDate1)
+                .replace("%PUBDATE2%", pubDate2)
+                .replace("%PUBDATE3%", pubDate3)
+                .replace("%PODCAST1%", "https://test/podcast1.mp3")
+                .replace("%PODCAST2%", "https://test/podcast2.mp3")
+                .replace("%PODCAST3%", "https://test/podcast3.mp3");
+    }
+
+    private static List<FeedItem> parse(String feed, String latestLoadedPodcastDate) {
+        return parse(feed, latestLoadedPodcastDate, null);
+    }
+
+    private static List<FeedItem> parse(String feed, String latestLoadedPodcastDate, String guidCursor) {
+        Iterator<FeedItem> iterator = new FeedParser().parse(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), latestLoadedPodcastDate, guidCursor);
+        List<FeedItem> items = new ArrayList<>();
+        iterator.forEachRemaining(items::add);
+        return items;
+    }
+
+    // reads the feed the way the route does, with the scan state kept from the polls before
+    private static List<FeedItem> poll(FeedParser feedParser, FeedStateStore feedStateStore, String feed, String latestLoadedPodcastDate) throws IOException {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("feedId", "feed");
+        exchange.getIn().setHeader("latestLoadedPodcastDate", latestLoadedPodcastDate);
+        feedStateStore.readScanState(exchange);
+        List<FeedItem> items = new ArrayList<>();
+        feedParser.parse(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), exchange).forEachRemaining(items::add);
+        feedStateStore.writeScanState(exchange);
+        return items;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.podcast;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeedSchedulerTests {
+    private static final long Now = 1_000_000L;
+
+    @Test
+    void firstPolls_shouldBeSpreadOverPollInterval() {
+        FeedScheduler scheduler = new FeedScheduler(registry(4, Duration.ofMinutes(4)), Now);
+
+        assertThat(scheduler.dueFeedsAt(Now)).extracting(Feed::getId).containsExactly("feed0");
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofMinutes(1).toMillis())).extracting(Feed::getId).containsExactly("feed1");
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofMinutes(3).toMillis())).extracting(Feed::getId).containsExactly("feed2", "feed3");
+    }
+
+    @Test
+    void feed_shouldBeDueAgain_afterItsPollInterval() {
+        FeedScheduler scheduler = new FeedScheduler(registry(1, Duration.ofMinutes(5)), Now);
+
+        assertThat(scheduler.dueFeedsAt(Now)).hasSize(1);
+        scheduler.pollCompleted("feed0", null, Now);
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofMinutes(4).toMillis())).isEmpty();
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofMinutes(5).toMillis())).hasSize(1);
+    }
+
+    @Test
+    void feed_shouldNotBeDue_whileItsPreviousPollIsRunning() {
+        FeedScheduler scheduler = new FeedScheduler(registry(1, Duration.ofMinutes(5)), Now);
+
+        assertThat(scheduler.dueFeedsAt(Now)).hasSize(1);
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofMinutes(10).toMillis())).isEmpty();
+        scheduler.pollCompleted("feed0", null, Now);
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofMinutes(10).toMillis())).hasSize(1);
+    }
+
+    @Test
+    void feed_shouldBeDue_afterLearnedDelay() {
+        FeedScheduler scheduler = new FeedScheduler(registry(1, Duration.ofMinutes(5)), Now);
+
+        assertThat(scheduler.dueFeedsAt(Now)).hasSize(1);
+        scheduler.pollCompleted("feed0", Duration.ofHours(2).toMillis(), Now + 1000);
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofMinutes(30).toMillis())).isEmpty();
+        assertThat(scheduler.dueFeedsAt(Now + 1000 + Duration.ofHours(2).toMillis())).hasSize(1);
+    }
+
+    @Test
+    void singleRun_shouldPollEveryFeedOnce_rightAway() {
+        FeedScheduler scheduler = new FeedScheduler(registry(3, Duration.ofMinutes(5)), true, Now);
+
+        assertThat(scheduler.dueFeedsAt(Now)).extracting(Feed::getId).containsExactly("feed0", "feed1", "feed2");
+        scheduler.pollCompleted("feed0", null, Now);
+        scheduler.pollCompleted("feed1", Duration.ofMinutes(1).toMillis(), Now);
+        assertThat(scheduler.isEveryFeedPolled()).isFalse();
+        scheduler.pollCompleted("feed2", null, Now);
+
+        assertThat(scheduler.isEveryFeedPolled()).isTrue();
+        assertThat(scheduler.dueFeedsAt(Now + Duration.ofDays(1).toMillis())).isEmpty();
+    }
+
+    @Test
+    void singleRun_shouldBeOver_withoutFeeds() {
+        assertThat(new FeedScheduler(registry(0, Duration.ofMinutes(5)), true, Now).isEveryFeedPolled()).isTrue();
+        assertThat(new FeedScheduler(registry(0, Duration.ofMinutes(5)), Now).isEveryFeedPolled()).isFalse();
+    }
+
+    private static FeedRegistry registry(int feedCount, Duration pollInterval) {
+        List<Feed> feeds = new ArrayList<>();
+        for (int i = 0; i < feedCount; i++) {
+            Feed feed = new Feed();
+            feed.setId("feed" + i);
+            feed.setUrl("https://test/feed" + i + ".rss");
+            feeds.add(feed);
+        }
+        return new FeedRegistry(feeds, "target/rss/podcasts", pollInterval);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.podcast;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GuidIndexTests {
+    @TempDir
+    Path stateFolder;
+
+    @Test
+    void loadedGuids_shouldSurviveRestart() throws IOException {
+        Path indexPath = stateFolder.resolve("loadedGuids.idx");
+        GuidIndex guidIndex = new GuidIndex(indexPath, 10_000);
+        for (int i = 0; i < 100_000; i++) {
+            guidIndex.adopt("feed1", "guid" + i);
+        }
+        guidIndex.add("feed1", "guid0");
+        guidIndex.track("feed1"); // one force for the whole batch
+        guidIndex.close();
+
+        guidIndex = new GuidIndex(indexPath, 10_000);
+        assertThat(Files.size(indexPath)).isEqualTo(16 * 100_001L); // the journal is compacted into the snapshot at startup
+        assertThat(Files.size(stateFolder.resolve("loadedGuids.journal"))).isZero();
+        assertThat(guidIndex.contains("feed1", "guid0")).isTrue();
+        assertThat(guidIndex.contains("feed1", "guid99999")).isTrue();
+        assertThat(guidIndex.contains("feed1", "guid100000")).isFalse();
+        assertThat(guidIndex.contains("feed2", "guid0")).isFalse();
+        assertThat(guidIndex.isTracked("feed1")).isTrue();
+        assertThat(guidIndex.isTracked("feed2")).isFalse();
+        guidIndex.close();
+    }
+
+    @Test
+    void tornRecord_shouldBeDropped() throws IOException {
+        Path indexPath = stateFolder.resolve("loadedGuids.idx");
+        GuidIndex guidIndex = new GuidIndex(indexPath, 10_000);
+        guidIndex.add("feed1", "guid1");
+        guidIndex.close();
+        try (FileChannel channel = FileChannel.open(stateFolder.resolve("loadedGuids.journal"), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[24])); // a zeroed block is not a record
+        }
+
+        guidIndex = new GuidIndex(indexPath, 10_000);
+        guidIndex.add("feed1", "guid2");
+        guidIndex.close();
+
+        guidIndex = new GuidIndex(indexPath, 10_000);
+        assertThat(Files.size(indexPath)).isEqualTo(32);
+        assertThat(guidIndex.contains("feed1", "guid1")).isTrue();
+        assertThat(guidIndex.contains("feed1", "guid2")).isTrue();
+        guidIndex.close();
+    }
+
+    @Test
+    void concurrentAdds_shouldAllBeDurable() throws Exception {
+        Path indexPath = stateFolder.resolve("loadedGuids.idx");
+        GuidIndex guidIndex = new GuidIndex(indexPath, 50);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> adds = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String guid = "guid" + i;
+            adds.add(executor.submit(() -> {
+                guidIndex.add("feed1", guid);
+                return null;
+            }));
+        }
+        for (Future<?> add : adds) {
+            add.get();
+        }
+        executor.shutdown();
+        // no close, as if the process died
+        GuidIndex recovered = new GuidIndex(indexPath, 50);
+        for (int i = 0; i < 400; i++) {
+            assertThat(recovered.contains("feed1", "guid" + i)).isTrue();
+        }
+        guidIndex.close();
+        recovered.close();
+    }
+}
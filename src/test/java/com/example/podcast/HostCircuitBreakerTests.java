@@ -0,0 +1,95 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.FileSystemException;
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class HostCircuitBreakerTests {
+    private static final String Url = "https://cdn.test/podcast1.mp3";
+
+    @Test
+    void host_shouldBeSkipped_afterFailuresInARow_untilTrialSucceeds() throws IOException {
+        HostCircuitBreaker breaker = new HostCircuitBreaker(2, Duration.ofMinutes(1));
+        breaker.failed(Url, 0);
+        breaker.acquire(Url, 0);
+        breaker.failed(Url, 0);
+
+        assertThatThrownBy(() -> breaker.acquire("https://CDN.test/podcast2.mp3", 1000)).isInstanceOf(HostCircuitBreaker.HostUnavailableException.class);
+        assertThatCode(() -> breaker.acquire("https://other.test/podcast2.mp3", 1000)).doesNotThrowAnyException();
+        assertThat(breaker.openCircuits()).isEqualTo(1);
+
+        breaker.acquire(Url, 60_000); // the trial
+        assertThatThrownBy(() -> breaker.acquire(Url, 60_001)).isInstanceOf(HostCircuitBreaker.HostUnavailableException.class);
+        breaker.succeeded(Url);
+        breaker.acquire(Url, 60_002);
+        assertThat(breaker.openCircuits()).isZero();
+    }
+
+    @Test
+    void failedTrial_shouldOpenCircuitAgain() throws IOException {
+        HostCircuitBreaker breaker = new HostCircuitBreaker(1, Duration.ofMinutes(1));
+        breaker.failed(Url, 0);
+
+        breaker.acquire(Url, 60_000);
+        breaker.failed(Url, 60_100);
+
+        assertThatThrownBy(() -> breaker.acquire(Url, 120_000)).isInstanceOf(HostCircuitBreaker.HostUnavailableException.class);
+        breaker.acquire(Url, 120_100);
+    }
+
+    @Test
+    void onlyFailuresOfTheServer_shouldCount() {
+        assertThat(HostCircuitBreaker.isHostFailure(new ConnectException())).isTrue();
+        assertThat(HostCircuitBreaker.isHostFailure(httpFailure(503))).isTrue();
+        assertThat(HostCircuitBreaker.isHostFailure(httpFailure(429))).isTrue();
+        assertThat(HostCircuitBreaker.isHostFailure(httpFailure(404))).isFalse();
+        assertThat(HostCircuitBreaker.isHostFailure(new HostCircuitBreaker.HostUnavailableException("open"))).isFalse();
+        assertThat(HostCircuitBreaker.isHostFailure(new HttpTimeoutException("No data received for 1000 ms"))).isTrue();
+        assertThat(HostCircuitBreaker.isHostFailure(new UncheckedIOException(new ConnectException()))).isTrue();
+    }
+
+    @Test
+    void localFailures_shouldNotCount() {
+        assertThat(HostCircuitBreaker.isHostFailure(new FileSystemException("target/rss/work/test/podcast1.mp3.part: No space left on device"))).isFalse();
+        assertThat(HostCircuitBreaker.isHostFailure(new IOException("Unexpected end of file"))).isFalse();
+    }
+
+    @Test
+    void trial_shouldOnlyCloseCircuit_ifTheHostWasAsked() throws IOException {
+        HostCircuitBreaker breaker = new HostCircuitBreaker(1, Duration.ofMinutes(1));
+        breaker.failed(Url, 0);
+
+        breaker.acquire(Url, 60_000);
+        breaker.downloadFinished(download()); // the episode was taken from the store
+        assertThat(breaker.isOpen(Url)).isTrue();
+
+        Exchange requested = download();
+        requested.setProperty("enclosureRequested", true);
+        breaker.downloadFinished(requested);
+        assertThat(breaker.isOpen(Url)).isFalse();
+    }
+
+    private static Exchange download() {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("enclosureUrl", Url);
+        return exchange;
+    }
+
+    private static HttpOperationFailedException httpFailure(int status) {
+        return new HttpOperationFailedException(Url, status, null, null, Collections.emptyMap(), null);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.podcast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HostConcurrencyLimiterTests {
+
+    @Test
+    void download_shouldWait_ifHostHasNoFreePermits() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1);
+        assertThat(limiter.tryAcquire("https://cdn.test/podcast1.mp3")).isTrue();
+
+        assertThat(limiter.tryAcquire("https://CDN.test/podcast2.mp3")).isFalse();
+
+        limiter.release("https://cdn.test/podcast1.mp3");
+        assertThat(limiter.tryAcquire("https://cdn.test/podcast2.mp3")).isTrue();
+    }
+
+    @Test
+    void downloads_shouldNotWait_ifTheyComeFromDifferentHosts() {
+        HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(1);
+        assertThat(limiter.tryAcquire("https://cdn1.test/podcast1.mp3")).isTrue();
+
+        assertThat(limiter.tryAcquire("https://cdn2.test/podcast2.mp3")).isTrue();
+    }
+}
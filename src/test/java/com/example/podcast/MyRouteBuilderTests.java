@@ -1,44 +1,61 @@
 package com.example.podcast;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.camel.*;
 import org.apache.camel.builder.NotifyBuilder;
 import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.http.base.HttpOperationFailedException;
 import org.apache.camel.test.spring.CamelSpringBootRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ConnectException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 
+import static org.apache.camel.builder.Builder.exchangeProperty;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @RunWith(CamelSpringBootRunner.class)
 @SpringBootTest(properties = {
         "spring.main.allow-bean-definition-overriding=true",
-        "notOlderThanDays=4"
+        "notOlderThanDays=4",
+        "stateFolder=target/test-state",
+        "workFolder=target/test-work",
+        "metricsPort=0",
+        "downloadRetryDelay=10ms",
+        "feeds[0].id=" + MyRouteBuilderTests.FeedId,
+        "feeds[0].url=" + MyRouteBuilderTests.RssFeedMockUrl
 })
+@AutoConfigureMetrics // exports to Prometheus as the app does
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class MyRouteBuilderTests {
-    private static final String StateFileInMockUrl = "stub:file:stateFile";
-    private static final String StateFileOutMockUrl = "mock:stateFile";
-    private static final String RssFeedMockUrl = "mock:rssFeed";
+    static final String FeedId = "test";
+    static final String RssFeedMockUrl = "mock:rssFeed";
+    private static final String SchedulerStubUrl = "stub:timer:feedScheduler";
     private static final String DestFolderMockUrl = "mock:destFolder";
-    private static final String Podcast1MockUrl = "mock:podcast1";
-    private static final String Podcast2MockUrl = "mock:podcast2";
-    private static final String Podcast3MockUrl = "mock:podcast3";
+    private static final Path GuidIndexPath = Paths.get("target", "test-state", "loadedGuids.idx");
+    private static final Path GuidJournalPath = Paths.get("target", "test-state", "loadedGuids.journal");
 
     @TestConfiguration
     static class PodcastTestConfig {
@@ -46,18 +63,8 @@ public class MyRouteBuilderTests {
         public UrlProvider urlProvider() {
             return new UrlProvider(){
                 @Override
-                public String getStateFileInUrl() {
-                    return StateFileInMockUrl;
-                }
-
-                @Override
-                public String getStateFileOutUrl() {
-                    return StateFileOutMockUrl;
-                }
-
-                @Override
-                public String getRssFeedUrl() {
-                    return RssFeedMockUrl;
+                public String getSchedulerUrl() {
+                    return SchedulerStubUrl;
                 }
 
                 @Override
@@ -74,28 +81,48 @@ public class MyRouteBuilderTests {
     @Autowired
     private ProducerTemplate template;
 
+    @Autowired
+    private UrlProvider urlProvider;
+
+    @Autowired
+    private FeedRegistry feedRegistry;
+
+    @Autowired
+    private FeedStateStore feedStateStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MetricsScrapeServer metricsScrapeServer;
+
     @EndpointInject(RssFeedMockUrl)
     private MockEndpoint mockRss;
 
-    @EndpointInject(StateFileOutMockUrl)
-    protected MockEndpoint mockStateFile;
-
     @EndpointInject(DestFolderMockUrl)
     protected MockEndpoint mockDestFolder;
 
-    @EndpointInject(Podcast1MockUrl)
-    protected MockEndpoint mockPodcast1;
-    @EndpointInject(Podcast2MockUrl)
-    protected MockEndpoint mockPodcast2;
-    @EndpointInject(Podcast3MockUrl)
-    protected MockEndpoint mockPodcast3;
+    private StubHttpServer podcastServer;
 
     private String today;
     private String minus2days;
     private String minus3days;
+    private String testRssFeed;
+
+    @BeforeAll
+    static void setUpAll() throws IOException {
+        Files.deleteIfExists(GuidIndexPath); // each test starts its own context on a fresh index
+        Files.deleteIfExists(GuidJournalPath);
+    }
 
     @BeforeEach
     void setUp()  throws IOException {
+        podcastServer = new StubHttpServer();
+        podcastServer.resource("/podcast1", "123".getBytes(StandardCharsets.UTF_8));
+        podcastServer.redirect("/podcast2", podcastServer.url("/cdn/podcast2")); // a podcast hosted behind a redirect (http status 302)
+        podcastServer.resource("/cdn/podcast2", "456".getBytes(StandardCharsets.UTF_8));
+        podcastServer.resource("/podcast3", "789".getBytes(StandardCharsets.UTF_8));
+
         today = ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME);
         minus2days = ZonedDateTime.now().minusDays(2).format(DateTimeFormatter.RFC_1123_DATE_TIME);
         minus3days = ZonedDateTime.now().minusDays(3).format(DateTimeFormatter.RFC_1123_DATE_TIME);
@@ -103,14 +130,39 @@ public class MyRouteBuilderTests {
 
         Path testRssTemplatePath = Paths.get("src","test","resources","TestRssFeed.xml");
         String testRssTemplate = new String(Files.readAllBytes(testRssTemplatePath), StandardCharsets.UTF_8);
-        String testRssFeed = testRssTemplate
+        testRssFeed = testRssTemplate
                 .replace("%PUBDATE1%", today)
                 .replace("%PUBDATE2%", minus2days)
                 .replace("%PUBDATE3%", minus5days)
-                .replace("%PODCAST1%", Podcast1MockUrl)
-                .replace("%PODCAST2%", Podcast2MockUrl)
-                .replace("%PODCAST3%", Podcast3MockUrl);
+                .replace("%PODCAST1%", podcastServer.url("/podcast1"))
+                .replace("%PODCAST2%", podcastServer.url("/podcast2"))
+                .replace("%PODCAST3%", podcastServer.url("/podcast3"));
         mockRss.whenAnyExchangeReceived(e -> e.getIn().setBody(testRssFeed));
+
+        FileSystemUtils.deleteRecursively(feedStateStore.feedFolder(FeedId));
+        FileSystemUtils.deleteRecursively(Paths.get("target", "test-work"));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        podcastServer.close();
+        Files.deleteIfExists(GuidIndexPath);
+        Files.deleteIfExists(GuidJournalPath);
+    }
+
+    private void pollFeed(String latestLoadedPodcastDate) throws IOException {
+        if (latestLoadedPodcastDate != null) {
+            feedStateStore.writeLatestDate(FeedId, latestLoadedPodcastDate);
+        }
+        template.sendBody(urlProvider.getFeedPollUrl(), feedRegistry.getFeeds().get(0));
+    }
+
+    private NotifyBuilder pollCompleted(int polls) {
+        return new NotifyBuilder(context)
+                .fromRoute("pollFeed")
+                .filter(exchangeProperty(Exchange.SPLIT_INDEX).isNull()) // not the exchanges of single feed items
+                .whenCompleted(polls)
+                .create();
     }
 
     @Test
@@ -119,47 +171,53 @@ public class MyRouteBuilderTests {
 
         // podcasts not older than 3 days should be loaded
         String latestLoadedPodcastDate = minus3days;
-        template.sendBody(StateFileInMockUrl, latestLoadedPodcastDate);
+        pollFeed(latestLoadedPodcastDate);
 
         // rss feed fetched
         mockRss.expectedMessageCount(1);
         mockRss.expectedHeaderReceived("latestLoadedPodcastDate", latestLoadedPodcastDate);
 
-        // podcast from the 1st item in the test RSS feed should be loaded as it's newer than the latest loaded podcast
-        mockPodcast1.expectedMessageCount(1);
-        mockPodcast1.expectedHeaderReceived("publicationDate", today);
-        mockPodcast1.whenAnyExchangeReceived(e -> e.getIn().setBody(123));
-
-        // podcast from the 2nd item in the test RSS feed should be loaded as it's newer than the latest loaded podcast
-        mockPodcast2.expectedMessageCount(1);
-        mockPodcast2.expectedHeaderReceived("publicationDate", minus2days);
-        mockPodcast2.whenAnyExchangeReceived(e -> e.getIn().setBody(456));
-
-        // 3rd item in the test RSS feed should be filtered out as it's older than the latest loaded podcast
-        mockPodcast3.expectedMessageCount(0);
-
         // two audio files are saved to dest folder
         mockDestFolder.expectedMessageCount(2);
         mockDestFolder.message(0).header(Exchange.FILE_NAME).isEqualTo("podcast1.mp3");
         mockDestFolder.message(1).header(Exchange.FILE_NAME).isEqualTo("podcast2.mp3");
-        mockDestFolder.message(0).body().isEqualTo(123);
-        mockDestFolder.message(1).body().isEqualTo(456);
-
-        mockStateFile.expectedMessageCount(1);
-        mockStateFile.message(0).body().isEqualTo(today); // publication date of the latest stored podcast
+        mockDestFolder.message(0).body(String.class).isEqualTo("123");
+        mockDestFolder.message(1).body(String.class).isEqualTo("456");
 
-        NotifyBuilder notify = new NotifyBuilder(context)
-                .wereSentTo(StateFileOutMockUrl)
-                .whenDone(1)
-                .create();
+        NotifyBuilder notify = pollCompleted(1);
 
         assertTrue(notify.matchesWaitTime());
         mockRss.assertIsSatisfied();
-        mockPodcast1.assertIsSatisfied();
-        mockPodcast2.assertIsSatisfied();
-        mockPodcast3.assertIsSatisfied();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(1); // podcast from the 1st item in the test RSS feed should be loaded as it's newer than the latest loaded podcast
+        assertThat(podcastServer.requestCount("/podcast2")).isEqualTo(1); // podcast from the 2nd item in the test RSS feed should be loaded as it's newer than the latest loaded podcast
+        assertThat(podcastServer.requestCount("/podcast3")).isEqualTo(0); // 3rd item in the test RSS feed should be filtered out as it's older than the latest loaded podcast
         mockDestFolder.assertIsSatisfied();
-        mockStateFile.assertIsSatisfied();
+        assertThat(feedStateStore.readLatestDate(FeedId)).isEqualTo(today); // publication date of the latest stored podcast
+
+        assertThat(meterRegistry.get("podcast.items.seen").tag("feed", FeedId).counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("podcast.items.filtered").tag("feed", FeedId).counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("podcast.items.downloaded").tag("feed", FeedId).counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("podcast.download.size").tag("feed", FeedId).summary().totalAmount()).isEqualTo(6);
+        assertThat(meterRegistry.get("podcast.feed.size").tag("feed", FeedId).summary().totalAmount()).isGreaterThan(0);
+        assertThat(meterRegistry.get("podcast.feed.fetch").tag("feed", FeedId).timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("podcast.downloads.inflight").gauge().value()).isEqualTo(0);
+
+        URL scrapeUrl = new URL("http://localhost:" + metricsScrapeServer.getPort() + "/metrics");
+        try (InputStream scrape = scrapeUrl.openStream()) {
+            assertThat(new String(StreamUtils.copyToByteArray(scrape), StandardCharsets.UTF_8))
+                    .contains("podcast_items_downloaded_total{feed=\"test\",} 2.0");
+        }
+    }
+
+    @Test
+    public void dueFeed_shouldBeHandedToPollFeed_bySchedulerTick() throws Exception {
+        feedStateStore.writeLatestDate(FeedId, today);
+        mockRss.expectedMessageCount(1);
+        mockRss.expectedHeaderReceived("feedId", FeedId);
+
+        template.sendBody(SchedulerStubUrl, null); // a tick of the timer, the feed is due at startup
+
+        mockRss.assertIsSatisfied();
     }
 
     @Test
@@ -168,35 +226,25 @@ public class MyRouteBuilderTests {
 
         // all podcasts have been loaded as of now
         String latestLoadedPodcastDate = today;
-        template.sendBody(StateFileInMockUrl, latestLoadedPodcastDate);
+        pollFeed(latestLoadedPodcastDate);
 
         // rss feed fetched
         mockRss.expectedMessageCount(1);
         mockRss.expectedHeaderReceived("latestLoadedPodcastDate", latestLoadedPodcastDate);
 
-        // all items in the test RSS feed should be filtered out as they have already been loaded
-        mockPodcast1.expectedMessageCount(0);
-        mockPodcast2.expectedMessageCount(0);
-        mockPodcast3.expectedMessageCount(0);
-
         // nothing saved to dest folder
         mockDestFolder.expectedMessageCount(0);
 
-        mockStateFile.expectedMessageCount(1);
-        mockStateFile.message(0).body().isEqualTo(today); // the same latestLoadedPodcastDate is stored
-
-        NotifyBuilder notify = new NotifyBuilder(context)
-                .wereSentTo(StateFileOutMockUrl)
-                .whenDone(1)
-                .create();
+        NotifyBuilder notify = pollCompleted(1);
 
         assertTrue(notify.matchesWaitTime());
         mockRss.assertIsSatisfied();
-        mockPodcast1.assertIsSatisfied();
-        mockPodcast2.assertIsSatisfied();
-        mockPodcast3.assertIsSatisfied();
+        // all items in the test RSS feed should be filtered out as they have already been loaded
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(0);
+        assertThat(podcastServer.requestCount("/podcast2")).isEqualTo(0);
+        assertThat(podcastServer.requestCount("/podcast3")).isEqualTo(0);
         mockDestFolder.assertIsSatisfied();
-        mockStateFile.assertIsSatisfied();
+        assertThat(feedStateStore.readLatestDate(FeedId)).isEqualTo(today); // the same latestLoadedPodcastDate is stored
     }
 
     @Test
@@ -205,47 +253,105 @@ public class MyRouteBuilderTests {
         assertThat(context.getStatus()).isEqualTo(ServiceStatus.Started);
 
         // no state file
-        template.sendBody(StateFileInMockUrl, null);
+        pollFeed(null);
 
         // rss feed fetched
         mockRss.expectedMessageCount(1);
         mockRss.expectedHeaderReceived("latestLoadedPodcastDate", null);
 
-        // podcast from the 1st item in the test RSS feed should be loaded as it's not older than 4 days
-        mockPodcast1.expectedMessageCount(1);
-        mockPodcast1.expectedHeaderReceived("publicationDate", today);
-        mockPodcast1.whenAnyExchangeReceived(e -> e.getIn().setBody(123));
-
-        // podcast from the 2nd item in the test RSS feed should be loaded as it's not older than 4 days
-        mockPodcast2.expectedMessageCount(1);
-        mockPodcast2.expectedHeaderReceived("publicationDate", minus2days);
-        mockPodcast2.whenAnyExchangeReceived(e -> e.getIn().setBody(456));
-
-        // 3rd item in the test RSS feed should be filtered out as it's older than 4 days
-        mockPodcast3.expectedMessageCount(0);
-
         // two audio files are saved to dest folder
         mockDestFolder.expectedMessageCount(2);
         mockDestFolder.message(0).header(Exchange.FILE_NAME).isEqualTo("podcast1.mp3");
         mockDestFolder.message(1).header(Exchange.FILE_NAME).isEqualTo("podcast2.mp3");
-        mockDestFolder.message(0).body().isEqualTo(123);
-        mockDestFolder.message(1).body().isEqualTo(456);
+        mockDestFolder.message(0).body(String.class).isEqualTo("123");
+        mockDestFolder.message(1).body(String.class).isEqualTo("456");
 
-        mockStateFile.expectedMessageCount(1);
-        mockStateFile.message(0).body().isEqualTo(today); // publication date of the latest stored podcast
+        NotifyBuilder notify = pollCompleted(1);
 
-        NotifyBuilder notify = new NotifyBuilder(context)
-                .wereSentTo(StateFileOutMockUrl)
-                .whenDone(1)
-                .create();
+        assertTrue(notify.matchesWaitTime());
+        mockRss.assertIsSatisfied();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(1); // podcast from the 1st item in the test RSS feed should be loaded as it's not older than 4 days
+        assertThat(podcastServer.requestCount("/podcast2")).isEqualTo(1); // podcast from the 2nd item in the test RSS feed should be loaded as it's not older than 4 days
+        assertThat(podcastServer.requestCount("/podcast3")).isEqualTo(0); // 3rd item in the test RSS feed should be filtered out as it's older than 4 days
+        mockDestFolder.assertIsSatisfied();
+        assertThat(feedStateStore.readLatestDate(FeedId)).isEqualTo(today); // publication date of the latest stored podcast
+    }
+
+    @Test
+    public void podcasts_shouldNotBeLoadedAgain_ifRssFeedIsNotModified() throws Exception {
+        assertThat(context.getStatus()).isEqualTo(ServiceStatus.Started);
+
+        // the 1st poll gets the feed with its validators, the 2nd one is answered with 304 Not Modified
+        mockRss.whenExchangeReceived(1, e -> {
+            e.getIn().setBody(testRssFeed);
+            e.getIn().setHeader("ETag", "\"v1\"");
+            e.getIn().setHeader("Last-Modified", minus2days);
+        });
+        mockRss.whenExchangeReceived(2, e -> {
+            throw new HttpOperationFailedException(RssFeedMockUrl, 304, "Not Modified", null, Collections.emptyMap(), null);
+        });
+        mockRss.expectedMessageCount(2);
+        mockRss.message(0).header("If-None-Match").isNull();
+        mockRss.message(1).header("If-None-Match").isEqualTo("\"v1\"");
+        mockRss.message(1).header("If-Modified-Since").isEqualTo(minus2days);
+
+        // podcasts are loaded by the 1st poll only
+        mockDestFolder.expectedMessageCount(2);
+
+        NotifyBuilder notify = pollCompleted(2);
+
+        NotifyBuilder firstPoll = pollCompleted(1);
+        pollFeed(minus3days);
+        assertTrue(firstPoll.matchesWaitTime());
+        template.sendBody(urlProvider.getFeedPollUrl(), feedRegistry.getFeeds().get(0));
 
         assertTrue(notify.matchesWaitTime());
         mockRss.assertIsSatisfied();
-        mockPodcast1.assertIsSatisfied();
-        mockPodcast2.assertIsSatisfied();
-        mockPodcast3.assertIsSatisfied();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(1);
+        assertThat(podcastServer.requestCount("/podcast2")).isEqualTo(1);
+        assertThat(podcastServer.requestCount("/podcast3")).isEqualTo(0);
+        mockDestFolder.assertIsSatisfied();
+        assertThat(podcastServer.lastRequestHeader("/podcast1", "If-None-Match")).isNull();
+        assertThat(feedStateStore.readLatestDate(FeedId)).isEqualTo(today);
+    }
+
+    @Test
+    public void feedFetch_shouldBeTimed_ifRssFeedIsNotModified() throws Exception {
+        mockRss.whenAnyExchangeReceived(e -> {
+            throw new HttpOperationFailedException(RssFeedMockUrl, 304, "Not Modified", null, Collections.emptyMap(), null);
+        });
+        mockDestFolder.expectedMessageCount(0);
+
+        NotifyBuilder notify = pollCompleted(1);
+        pollFeed(today);
+
+        assertTrue(notify.matchesWaitTime());
+        mockDestFolder.assertIsSatisfied();
+        assertThat(meterRegistry.get("podcast.feed.fetch").tag("feed", FeedId).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void podcasts_shouldNotBeLoadedAgain_ifTheirGuidsAreKnown() throws Exception {
+        assertThat(context.getStatus()).isEqualTo(ServiceStatus.Started);
+
+        // podcasts are loaded by the 1st poll only, although the state file is lost before the 2nd one
+        mockRss.expectedMessageCount(2);
+        mockDestFolder.expectedMessageCount(2);
+
+        NotifyBuilder notify = pollCompleted(2);
+
+        NotifyBuilder firstPoll = pollCompleted(1);
+        pollFeed(null);
+        assertTrue(firstPoll.matchesWaitTime());
+        FileSystemUtils.deleteRecursively(feedStateStore.feedFolder(FeedId));
+        pollFeed(null);
+
+        assertTrue(notify.matchesWaitTime());
+        mockRss.assertIsSatisfied();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(1);
+        assertThat(podcastServer.requestCount("/podcast2")).isEqualTo(1);
+        assertThat(podcastServer.requestCount("/podcast3")).isEqualTo(0);
         mockDestFolder.assertIsSatisfied();
-        mockStateFile.assertIsSatisfied();
     }
 
     @Test
@@ -262,29 +368,87 @@ public class MyRouteBuilderTests {
         mockRss.expectedMessageCount(1);
         mockRss.expectedHeaderReceived("latestLoadedPodcastDate", latestLoadedPodcastDate);
 
-        // no podcasts loaded
-        mockPodcast1.expectedMessageCount(0);
-        mockPodcast2.expectedMessageCount(0);
-        mockPodcast3.expectedMessageCount(0);
-
         // nothing saved to dest folder
         mockDestFolder.expectedMessageCount(0);
 
-        // the state file is not updated
-        mockStateFile.expectedMessageCount(0);
-
-        template.sendBody(StateFileInMockUrl, latestLoadedPodcastDate);
+        pollFeed(latestLoadedPodcastDate);
         NotifyBuilder notify = new NotifyBuilder(context)
                 .whenFailed(1)
                 .create();
 
         assertTrue(notify.matchesWaitTime());
         mockRss.assertIsSatisfied();
-        mockPodcast1.assertIsSatisfied();
-        mockPodcast2.assertIsSatisfied();
-        mockPodcast3.assertIsSatisfied();
+        // no podcasts loaded
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(0);
+        assertThat(podcastServer.requestCount("/podcast2")).isEqualTo(0);
+        assertThat(podcastServer.requestCount("/podcast3")).isEqualTo(0);
         mockDestFolder.assertIsSatisfied();
-        mockStateFile.assertIsSatisfied();
+        assertThat(feedStateStore.readLatestDate(FeedId)).isEqualTo(latestLoadedPodcastDate); // the state file is not updated
+        assertThat(meterRegistry.get("podcast.failures").tag("feed", FeedId).tag("stage", "fetch").tag("cause", "ConnectException").counter().count()).isEqualTo(1);
     }
-}
 
+    @Test
+    public void episode_shouldBeRetried_afterServerErrors() throws Exception {
+        assertThat(context.getStatus()).isEqualTo(ServiceStatus.Started);
+
+        podcastServer.failures("/podcast1", 2, 503);
+        mockDestFolder.expectedMessageCount(2);
+        feedStateStore.writeLatestDate(FeedId, minus3days);
+
+        template.requestBody(urlProvider.getFeedPollUrl(), feedRegistry.getFeeds().get(0)); // returns once the poll is through
+
+        mockDestFolder.assertIsSatisfied();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(3); // two failures, then the download
+        assertThat(meterRegistry.get("podcast.items.failed").tag("feed", FeedId).counter().count()).isEqualTo(0);
+        assertThat(feedStateStore.readDeadLetters(FeedId)).isEmpty();
+    }
+
+    @Test
+    public void episode_shouldBeLeftForNextPoll_afterItsRetries() throws Exception {
+        assertThat(context.getStatus()).isEqualTo(ServiceStatus.Started);
+
+        podcastServer.failures("/podcast1", 10, 503);
+        mockDestFolder.expectedMessageCount(1);
+        feedStateStore.writeLatestDate(FeedId, minus3days);
+
+        template.requestBody(urlProvider.getFeedPollUrl(), feedRegistry.getFeeds().get(0)); // returns once the poll is through
+
+        mockDestFolder.assertIsSatisfied();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(4); // downloadRetries=3
+        assertThat(feedStateStore.readDeadLetters(FeedId)).hasSize(1);
+    }
+
+    @Test
+    public void failedEpisode_shouldNotStopOthers_andBeRetriedByNextPoll() throws Exception {
+        assertThat(context.getStatus()).isEqualTo(ServiceStatus.Started);
+
+        podcastServer.failures("/podcast1", 1, 404);
+        mockRss.whenAnyExchangeReceived(e -> {
+            e.getIn().setBody(testRssFeed);
+            e.getIn().setHeader("ETag", "\"v1\"");
+        });
+
+        // the 1st poll loads podcast2 only, podcast1 is not retried within the poll as it was not found
+        mockDestFolder.expectedMessageCount(1);
+        mockDestFolder.message(0).header(Exchange.FILE_NAME).isEqualTo("podcast2.mp3");
+        feedStateStore.writeLatestDate(FeedId, minus3days);
+        template.requestBody(urlProvider.getFeedPollUrl(), feedRegistry.getFeeds().get(0)); // returns once the poll is through
+        mockDestFolder.assertIsSatisfied();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(1);
+        assertThat(feedStateStore.readLatestDate(FeedId)).isEqualTo(minus2days);
+        assertThat(feedStateStore.readDeadLetters(FeedId)).hasSize(1);
+        assertThat(meterRegistry.get("podcast.items.failed").tag("feed", FeedId).counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("podcast.failures").counter()).isNull(); // the poll itself went through
+
+        // the 2nd poll gets the whole feed, not 304 Not Modified, and loads podcast1
+        mockDestFolder.reset();
+        mockDestFolder.expectedMessageCount(1);
+        mockDestFolder.message(0).header(Exchange.FILE_NAME).isEqualTo("podcast1.mp3");
+        template.requestBody(urlProvider.getFeedPollUrl(), feedRegistry.getFeeds().get(0));
+        mockDestFolder.assertIsSatisfied();
+        assertThat(mockRss.getReceivedExchanges().get(1).getIn().getHeader("If-None-Match")).isNull();
+        assertThat(podcastServer.requestCount("/podcast1")).isEqualTo(2);
+        assertThat(feedStateStore.readDeadLetters(FeedId)).isEmpty();
+        assertThat(feedStateStore.readLatestDate(FeedId)).isEqualTo(today);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.podcast;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PodcastMetricsTests {
+    private static final String Feed = "<rss><channel>"
+            + "<item><guid>1</guid><pubDate>Tue, 01 Jun 2021 10:15:30 GMT</pubDate></item>"
+            + "<item><guid>2</guid><pubDate>Mon, 31 May 2021 10:15:30 GMT</pubDate></item>"
+            + "</channel></rss>";
+
+    @Test
+    void feedSizeAndParseTime_shouldBeRecorded_onceTheItemsAreRead() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PodcastMetrics metrics = new PodcastMetrics(registry);
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("feedId", "feed");
+        exchange.getIn().setBody(new ByteArrayInputStream(Feed.getBytes(StandardCharsets.UTF_8)));
+
+        metrics.fetchStarted(exchange);
+        metrics.feedFetched(exchange);
+        Iterator<FeedItem> items = metrics.timeParsing("feed", new FeedParser().parse(exchange.getIn().getBody(InputStream.class), null, null));
+        int count = 0;
+        while (items.hasNext()) {
+            items.next();
+            count++;
+        }
+
+        assertThat(count).isEqualTo(2);
+        assertThat(registry.get("podcast.feed.fetch").tag("feed", "feed").timer().count()).isEqualTo(1);
+        assertThat(registry.get("podcast.feed.parse").tag("feed", "feed").timer().count()).isEqualTo(1);
+        assertThat(registry.get("podcast.feed.size").tag("feed", "feed").summary().totalAmount()).isEqualTo(Feed.length());
+    }
+
+    @Test
+    void failedPoll_shouldBeCountedByStageAndRootCause() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PodcastMetrics metrics = new PodcastMetrics(registry);
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader("feedId", "feed");
+        exchange.setProperty("pollStage", "items");
+        exchange.setException(new RuntimeException(new SocketTimeoutException("Read timed out")));
+
+        metrics.pollCompleted(exchange);
+        metrics.pollCompleted(exchange);
+
+        assertThat(registry.get("podcast.failures").tags("feed", "feed", "stage", "items", "cause", "SocketTimeoutException").counter().count()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.podcast;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.http.base.HttpOperationFailedException;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PollOnceExitTests {
+    private static final long Now = 1_000_000L;
+
+    private final StaticApplicationContext context = new StaticApplicationContext();
+    private final CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+
+    @Test
+    void failedPoll_shouldExitWithCode1_afterTheLastFeed() throws Exception {
+        FeedScheduler scheduler = new FeedScheduler(registry(2), true, Now);
+        PollOnceExit pollOnceExit = new PollOnceExit(context, scheduler, exitCode::complete);
+        context.refresh();
+        assertThat(scheduler.dueFeedsAt(Now)).hasSize(2);
+
+        completePoll(scheduler, pollOnceExit, "feed0", new HttpOperationFailedException("https://test/feed0.rss", 500, null, null, Collections.emptyMap(), null));
+        assertThat(exitCode).isNotDone();
+        completePoll(scheduler, pollOnceExit, "feed1", null);
+
+        assertThat(exitCode.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(context.isActive()).isFalse();
+    }
+
+    @Test
+    void polls_shouldExitWithCode0_whenNoneFailed() throws Exception {
+        FeedScheduler scheduler = new FeedScheduler(registry(1), true, Now);
+        PollOnceExit pollOnceExit = new PollOnceExit(context, scheduler, exitCode::complete);
+        context.refresh();
+        scheduler.dueFeedsAt(Now);
+
+        completePoll(scheduler, pollOnceExit, "feed0", null);
+
+        assertThat(exitCode.get(5, TimeUnit.SECONDS)).isZero();
+    }
+
+    @Test
+    void app_shouldExitWithCode0_whenStartedWithoutFeeds() throws Exception {
+        PollOnceExit pollOnceExit = new PollOnceExit(context, new FeedScheduler(registry(0), true, Now), exitCode::complete);
+        context.refresh();
+
+        pollOnceExit.started();
+
+        assertThat(exitCode.get(5, TimeUnit.SECONDS)).isZero();
+    }
+
+    @Test
+    void app_shouldKeepRunning_withoutPollOnce() throws Exception {
+        FeedScheduler scheduler = new FeedScheduler(registry(1), false, Now);
+        PollOnceExit pollOnceExit = new PollOnceExit(context, scheduler, exitCode::complete);
+        context.refresh();
+        scheduler.dueFeedsAt(Now);
+
+        pollOnceExit.started();
+        completePoll(scheduler, pollOnceExit, "feed0", null);
+
+        Thread.sleep(100);
+        assertThat(exitCode).isNotDone();
+        assertThat(context.isActive()).isTrue();
+    }
+
+    // as the onCompletion of the pollFeed route reports it
+    private static void completePoll(FeedScheduler scheduler, PollOnceExit pollOnceExit, String feedId, Exception failure) {
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getMessage().setHeader("feedId", feedId);
+        exchange.setException(failure);
+        scheduler.pollCompleted(feedId, null, Now);
+        pollOnceExit.pollCompleted(exchange);
+    }
+
+    private static FeedRegistry registry(int feedCount) {
+        List<Feed> feeds = new ArrayList<>();
+        for (int i = 0; i < feedCount; i++) {
+            Feed feed = new Feed();
+            feed.setId("feed" + i);
+            feed.setUrl("https://test/feed" + i + ".rss");
+            feeds.add(feed);
+        }
+        return new FeedRegistry(feeds, "target/rss/podcasts", Duration.ofMinutes(5));
+    }
+}
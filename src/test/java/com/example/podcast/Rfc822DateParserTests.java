@@ -0,0 +1,56 @@
+package com.example.podcast;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class Rfc822DateParserTests {
+    private static final long June1st2021 = ZonedDateTime.of(2021, 6, 1, 10, 15, 30, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @Test
+    void rfc1123Dates_shouldBeParsedLikeJavaTimeDoes() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            Instant instant = Instant.ofEpochSecond(random.nextInt(Integer.MAX_VALUE) * (random.nextBoolean() ? 1L : 2L));
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds((random.nextInt(26 * 60) - 12 * 60) * 60);
+            String date = ZonedDateTime.ofInstant(instant, offset).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+
+            assertThat(Rfc822DateParser.parseMillis(date)).as(date).isEqualTo(instant.toEpochMilli());
+        }
+    }
+
+    @Test
+    void commonVariants_shouldBeParsed() {
+        assertThat(Rfc822DateParser.parseMillis("Tue, 01 Jun 2021 10:15:30 GMT")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tue, 1 Jun 2021 10:15:30 +0000")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("01 Jun 2021 10:15:30 UT")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tuesday, 01 June 2021 10:15:30 UTC")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tue,01 jun 21 10:15:30 Z")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("  Tue, 01-Jun-2021 12:15:30.250 +02:00  ")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tue, 01 Jun 2021 06:15:30 EDT")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tue, 01 Jun 2021 02:15:30 PST")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tue, 01 Jun 2021 10:15:30")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tue, 01 Jun 2021 12:15:30 +0200 (CEST)")).isEqualTo(June1st2021);
+        assertThat(Rfc822DateParser.parseMillis("Tue, 01 Jun 2021 10:15 GMT")).isEqualTo(June1st2021 - 30_000);
+        assertThat(Rfc822DateParser.parseMillis("Tue, 01 Jun 2021")).isEqualTo(June1st2021 - (10 * 3600 + 15 * 60 + 30) * 1000);
+        assertThat(Rfc822DateParser.parseMillis("Wed, 29 Sept 2021 00:00:00 GMT"))
+                .isEqualTo(ZonedDateTime.of(2021, 9, 29, 0, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli());
+    }
+
+    @Test
+    void invalidDates_shouldBeRejected() {
+        String[] invalidDates = {null, "", "wrong_date", "Tue, 32 Jun 2021 10:15:30 GMT", "Sat, 29 Feb 2021 10:15:30 GMT",
+                "Tue, 01 Jum 2021 10:15:30 GMT", "Tue, 01 Jun 202 10:15:30 GMT", "Tue, 01 Jun 2021 24:15:30 GMT",
+                "Tue, 01 Jun 2021 10:15:30 +020", "Tue, 01 Jun 2021 10:15:30 CET", "Tue, 01 Jun 2021 10:15:30 GMT junk",
+                "2021-06-01T10:15:30Z"};
+        for (String date : invalidDates) {
+            assertThat(Rfc822DateParser.parseMillis(date)).as(date).isEqualTo(Rfc822DateParser.Invalid);
+        }
+    }
+}
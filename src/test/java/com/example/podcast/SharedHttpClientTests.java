@@ -0,0 +1,60 @@
+package com.example.podcast;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SharedHttpClientTests {
+    private StubHttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void requestsOverHostLimit_shouldWait_untilABodyIsRead() throws Exception {
+        server = new StubHttpServer();
+        server.resource("/feed.rss", new byte[8 << 20]); // more than the socket buffers hold, the connection stays busy until it is read
+        SharedHttpClient client = new SharedHttpClient(1000, HttpClient.Version.HTTP_1_1, 1, 300);
+
+        HttpResponse<InputStream> first = client.sendAsync(request(server.url("/feed.rss")), HttpResponse.BodyHandlers.ofInputStream())
+                .get(5, TimeUnit.SECONDS);
+        CompletableFuture<HttpResponse<byte[]>> second = client.sendAsync(request(server.url("/feed.rss")), HttpResponse.BodyHandlers.ofByteArray());
+
+        assertThat(client.waitingRequests()).isEqualTo(1);
+        assertThat(second).isNotDone();
+        first.body().close();
+        assertThat(second.get(5, TimeUnit.SECONDS).body()).hasSize(8 << 20);
+        assertThat(client.waitingRequests()).isZero();
+    }
+
+    @Test
+    void tlsConnection_shouldBeReused_byLaterRequests() throws Exception {
+        server = new StubHttpServer(true);
+        server.resource("/podcast.mp3", new byte[1000]);
+        SharedHttpClient client = new SharedHttpClient(1000, HttpClient.Version.HTTP_2, 8, 300, StubHttpServer.clientSslContext());
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<byte[]> response = client.sendAsync(request(server.url("/podcast.mp3")), HttpResponse.BodyHandlers.ofByteArray())
+                    .get(5, TimeUnit.SECONDS);
+            assertThat(response.statusCode()).isEqualTo(200);
+        }
+
+        assertThat(client.responses(HttpClient.Version.HTTP_1_1)).isEqualTo(3); // the stub server does not offer HTTP/2
+        assertThat(client.tlsConnections()).isEqualTo(1);
+    }
+
+    private static HttpRequest request(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+}
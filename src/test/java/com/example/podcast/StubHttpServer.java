@@ -0,0 +1,184 @@
+package com.example.podcast;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// serves canned responses on a local port for the download tests, over TLS with the self-signed stub-server.p12 if asked to
+public class StubHttpServer implements AutoCloseable {
+    private static final Pattern RangePattern = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final char[] KeyStorePassword = "changeit".toCharArray();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, byte[]> resources = new ConcurrentHashMap<>();
+    private final Map<String, String> redirects = new ConcurrentHashMap<>();
+    private final Map<String, String> eTags = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failureStatuses = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> failuresLeft = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final Map<String, Headers> lastRequestHeaders = new ConcurrentHashMap<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private volatile boolean rangesSupported = true;
+
+    public StubHttpServer() throws IOException {
+        this(false);
+    }
+
+    public StubHttpServer(boolean tls) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (tls) {
+            HttpsServer httpsServer = HttpsServer.create(address, 0);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext(true)));
+            server = httpsServer;
+        } else {
+            server = HttpServer.create(address, 0);
+        }
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String url(String path) {
+        return (server instanceof HttpsServer ? "https" : "http") + "://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    // a client context that trusts the stub server's certificate
+    public static SSLContext clientSslContext() throws IOException {
+        return sslContext(false);
+    }
+
+    private static SSLContext sslContext(boolean server) throws IOException {
+        try (InputStream in = StubHttpServer.class.getResourceAsStream("/stub-server.p12")) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, KeyStorePassword);
+            SSLContext context = SSLContext.getInstance("TLS");
+            if (server) {
+                KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                keyManagers.init(keyStore, KeyStorePassword);
+                context.init(keyManagers.getKeyManagers(), null, null);
+            } else {
+                TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                trustManagers.init(keyStore);
+                context.init(null, trustManagers.getTrustManagers(), null);
+            }
+            return context;
+        } catch (GeneralSecurityException exc) {
+            throw new IOException("Cannot load the stub server key store", exc);
+        }
+    }
+
+    public void resource(String path, byte[] body) {
+        resources.put(path, body);
+    }
+
+    public void redirect(String path, String location) {
+        redirects.put(path, location);
+    }
+
+    public void eTag(String path, String eTag) {
+        eTags.put(path, eTag);
+    }
+
+    // the next requests of the path are answered with the status
+    public void failures(String path, int count, int status) {
+        failureStatuses.put(path, status);
+        failuresLeft.put(path, new AtomicInteger(count));
+    }
+
+    public void rangesSupported(boolean rangesSupported) {
+        this.rangesSupported = rangesSupported;
+    }
+
+    public long bytesSent() {
+        return bytesSent.get();
+    }
+
+    public int requestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count != null ? count.get() : 0;
+    }
+
+    public String lastRequestHeader(String path, String name) {
+        Headers headers = lastRequestHeaders.get(path);
+        return headers != null ? headers.getFirst(name) : null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requestCounts.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        lastRequestHeaders.put(path, exchange.getRequestHeaders());
+
+        String location = redirects.get(path);
+        byte[] body = resources.get(path);
+        AtomicInteger failures = failuresLeft.get(path);
+        if (failures != null && failures.getAndDecrement() > 0) {
+            exchange.sendResponseHeaders(failureStatuses.get(path), -1);
+        } else if (location != null) {
+            exchange.getResponseHeaders().set("Location", location);
+            exchange.sendResponseHeaders(302, -1);
+        } else if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else if (eTags.containsKey(path) && eTags.get(path).equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.getResponseHeaders().set("ETag", eTags.get(path));
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            if (eTags.containsKey(path)) {
+                exchange.getResponseHeaders().set("ETag", eTags.get(path));
+            }
+            Matcher range = RangePattern.matcher(String.valueOf(exchange.getRequestHeaders().getFirst("Range")));
+            int from = 0;
+            int to = body.length - 1;
+            int status = 200;
+            if (rangesSupported) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                if (range.matches()) {
+                    from = Integer.parseInt(range.group(1));
+                    to = range.group(2).isEmpty() ? body.length - 1 : Math.min(Integer.parseInt(range.group(2)), body.length - 1);
+                    if (from >= body.length) {
+                        exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+                        exchange.sendResponseHeaders(416, -1);
+                        exchange.close();
+                        return;
+                    }
+                    status = 206;
+                    exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + body.length);
+                }
+            }
+            int length = to - from + 1;
+            bytesSent.addAndGet(length); // counted up front, the client may be done before the write returns
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body, from, length);
+            }
+        }
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.podcast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenBucketTests {
+
+    @Test
+    void transfer_shouldPause_onceBurstIsUsedUp() {
+        TokenBucket bucket = new TokenBucket(1000, 0);
+
+        assertThat(bucket.take(1000, 0)).isZero();
+        assertThat(bucket.take(500, 0)).isEqualTo(500_000_000L);
+    }
+
+    @Test
+    void tokens_shouldRefillWithTime_uptoOneSecondOfBurst() {
+        TokenBucket bucket = new TokenBucket(1000, 0);
+        bucket.take(1000, 0);
+
+        assertThat(bucket.take(250, 250_000_000L)).isZero();
+        assertThat(bucket.take(2000, 10_000_000_000L)).isEqualTo(1_000_000_000L);
+    }
+}
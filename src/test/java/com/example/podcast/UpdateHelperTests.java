@@ -1,23 +1,40 @@
 package com.example.podcast;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 
 public class UpdateHelperTests {
+    private static final String FeedId = "https://test/rss/feed";
 
     private static String startOfTime;
     private static String today;
     private static String minus2days;
     private static String minus5days;
 
+    @TempDir
+    Path stateFolder;
+    private GuidIndex guidIndex;
+
     @BeforeAll
     public static void beforeAllTestMethods() {
         startOfTime = ZonedDateTime.ofInstant(Instant.EPOCH, ZoneId.systemDefault()).format(DateTimeFormatter.RFC_1123_DATE_TIME);
@@ -26,14 +43,25 @@ public class UpdateHelperTests {
         minus5days = ZonedDateTime.now().minusDays(5).format(DateTimeFormatter.RFC_1123_DATE_TIME);
     }
 
+    @BeforeEach
+    public void beforeEachTestMethod() throws IOException {
+        guidIndex = new GuidIndex(stateFolder.resolve("loadedGuids.idx"), 10_000);
+    }
+
+    @AfterEach
+    public void afterEachTestMethod() throws IOException {
+        guidIndex.close();
+    }
+
     @Test
-    void publication_shouldBeSuitable_ifNoLatestLoadedPodcastDateAndPublicationIsNotTooOld() {
+    void publication_shouldBeSuitable_ifNoLatestLoadedPodcastDateAndPublicationIsNotTooOld() throws IOException {
         String publicationDate = today;
         String latestLoadedPodcastDate = null;
 
-        UpdateHelper updateHelper = new UpdateHelper(3);
-        Boolean result = updateHelper.isSuitablePublication(publicationDate, latestLoadedPodcastDate);
-        String latestPodcastDate = updateHelper.getLatestPodcastDate();
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+        Boolean result = isSuitablePublication(updateHelper, FeedId, null, publicationDate, latestLoadedPodcastDate);
+        updateHelper.episodeLoaded(FeedId, null, publicationDate);
+        String latestPodcastDate = updateHelper.getLatestPodcastDate(FeedId);
 
         assertThat(result).isTrue();
         assertThat(latestPodcastDate).isEqualTo(publicationDate);
@@ -44,9 +72,9 @@ public class UpdateHelperTests {
         String publicationDate = minus5days;
         String latestLoadedPodcastDate = null;
 
-        UpdateHelper updateHelper = new UpdateHelper(3);
-        Boolean result = updateHelper.isSuitablePublication(publicationDate, latestLoadedPodcastDate);
-        String latestPodcastDate = updateHelper.getLatestPodcastDate();
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+        Boolean result = isSuitablePublication(updateHelper, FeedId, null, publicationDate, latestLoadedPodcastDate);
+        String latestPodcastDate = updateHelper.getLatestPodcastDate(FeedId);
 
         assertThat(result).isFalse();
         assertThat(latestPodcastDate).isEqualTo(publicationDate);
@@ -57,22 +85,23 @@ public class UpdateHelperTests {
         String publicationDate = minus2days;
         String latestLoadedPodcastDate = today;
 
-        UpdateHelper updateHelper = new UpdateHelper(3);
-        Boolean result = updateHelper.isSuitablePublication(publicationDate, latestLoadedPodcastDate);
-        String latestPodcastDate = updateHelper.getLatestPodcastDate();
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+        Boolean result = isSuitablePublication(updateHelper, FeedId, null, publicationDate, latestLoadedPodcastDate);
+        String latestPodcastDate = updateHelper.getLatestPodcastDate(FeedId);
 
         assertThat(result).isFalse();
         assertThat(latestPodcastDate).isEqualTo(latestLoadedPodcastDate);
     }
 
     @Test
-    void publication_shouldBeSuitable_ifItIsNewerThanLatestLoadedPodcast() {
+    void publication_shouldBeSuitable_ifItIsNewerThanLatestLoadedPodcast() throws IOException {
         String publicationDate = today;
         String latestLoadedPodcastDate = minus2days;
 
-        UpdateHelper updateHelper = new UpdateHelper(3);
-        Boolean result = updateHelper.isSuitablePublication(publicationDate, latestLoadedPodcastDate);
-        String latestPodcastDate = updateHelper.getLatestPodcastDate();
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+        Boolean result = isSuitablePublication(updateHelper, FeedId, null, publicationDate, latestLoadedPodcastDate);
+        updateHelper.episodeLoaded(FeedId, null, publicationDate);
+        String latestPodcastDate = updateHelper.getLatestPodcastDate(FeedId);
 
         assertThat(result).isTrue();
         assertThat(latestPodcastDate).isEqualTo(publicationDate);
@@ -83,13 +112,104 @@ public class UpdateHelperTests {
         String publicationDate = "wrong_date";
         String latestLoadedPodcastDate = today;
 
-        UpdateHelper updateHelper = new UpdateHelper(3);
-        Boolean result = updateHelper.isSuitablePublication(publicationDate, latestLoadedPodcastDate);
-        String latestPodcastDate = updateHelper.getLatestPodcastDate();
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+        Boolean result = isSuitablePublication(updateHelper, FeedId, null, publicationDate, latestLoadedPodcastDate);
+        String latestPodcastDate = updateHelper.getLatestPodcastDate(FeedId);
 
         assertThat(result).isTrue();
         assertThat(latestPodcastDate).isEqualTo(startOfTime);
     }
-}
 
+    @Test
+    void latestPodcastDate_shouldBeTrackedPerFeed() throws IOException {
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+        updateHelper.episodeLoaded("feed1", null, today);
+        updateHelper.episodeLoaded("feed2", null, minus2days);
+
+        assertThat(updateHelper.getLatestPodcastDate("feed1")).isEqualTo(today);
+        assertThat(updateHelper.getLatestPodcastDate("feed2")).isEqualTo(minus2days);
+        assertThat(updateHelper.getLatestPodcastDate("feed3")).isEqualTo(startOfTime);
+    }
+
+    @Test
+    void latestPodcastDate_shouldNotLoseUpdates_ifPublicationsAreCheckedConcurrently() throws Exception {
+        int threads = 8;
+        int publicationsPerThread = 20_000;
+        ZonedDateTime now = ZonedDateTime.now().withNano(0);
+        String[] feeds = {"feed1", "feed2", "feed3"};
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                long[] maxSeconds = new long[feeds.length];
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < publicationsPerThread; i++) {
+                    int feed = random.nextInt(feeds.length);
+                    ZonedDateTime publication = now.minusSeconds(random.nextInt(30 * 24 * 3600));
+                    String publicationDate = publication.format(DateTimeFormatter.RFC_1123_DATE_TIME);
+                    if (isSuitablePublication(updateHelper, feeds[feed], null, publicationDate, null)) {
+                        updateHelper.episodeLoaded(feeds[feed], null, publicationDate);
+                    }
+                    maxSeconds[feed] = Math.max(maxSeconds[feed], publication.toEpochSecond());
+                }
+                return maxSeconds;
+            }));
+        }
+        long[] expected = new long[feeds.length];
+        for (Future<long[]> result : results) {
+            long[] maxSeconds = result.get();
+            for (int feed = 0; feed < feeds.length; feed++) {
+                expected[feed] = Math.max(expected[feed], maxSeconds[feed]);
+            }
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        for (int feed = 0; feed < feeds.length; feed++) {
+            ZonedDateTime latest = ZonedDateTime.parse(updateHelper.getLatestPodcastDate(feeds[feed]), DateTimeFormatter.RFC_1123_DATE_TIME);
+            assertThat(latest.toEpochSecond()).isEqualTo(expected[feed]);
+        }
+    }
 
+    @Test
+    void publication_shouldNotBeSuitable_ifItsGuidWasLoaded() throws IOException {
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+        guidIndex.add(FeedId, "guid1");
+
+        assertThat(isSuitablePublication(updateHelper, FeedId, "guid1", today, minus2days)).isFalse();
+        assertThat(isSuitablePublication(updateHelper, FeedId, "guid2", today, minus2days)).isTrue();
+        assertThat(isSuitablePublication(updateHelper, "feed2", "guid1", today, minus2days)).isTrue();
+    }
+
+    @Test
+    void backDatedPublication_shouldBeSuitable_onlyOnceGuidsAreTracked() throws IOException {
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+
+        assertThat(isSuitablePublication(updateHelper, FeedId, "loadedBeforeTracking", minus2days, today)).isFalse();
+        guidIndex.track(FeedId);
+
+        assertThat(isSuitablePublication(updateHelper, FeedId, "loadedBeforeTracking", minus2days, today)).isFalse();
+        assertThat(isSuitablePublication(updateHelper, FeedId, "backDated", minus2days, today)).isTrue();
+        assertThat(isSuitablePublication(updateHelper, FeedId, "tooOld", minus5days, today)).isFalse();
+    }
+
+    @Test
+    void latestPodcastDate_shouldNotMovePastEpisodes_untilTheyAreLoaded() throws IOException {
+        UpdateHelper updateHelper = new UpdateHelper(3, guidIndex);
+
+        assertThat(isSuitablePublication(updateHelper, FeedId, "guid1", today, minus5days)).isTrue();
+        assertThat(isSuitablePublication(updateHelper, FeedId, "guid2", minus2days, minus5days)).isTrue();
+        assertThat(updateHelper.getLatestPodcastDate(FeedId)).isEqualTo(minus5days);
+
+        updateHelper.episodeLoaded(FeedId, "guid2", minus2days);
+        assertThat(updateHelper.getLatestPodcastDate(FeedId)).isEqualTo(minus2days);
+        assertThat(guidIndex.contains(FeedId, "guid2")).isTrue();
+        assertThat(guidIndex.contains(FeedId, "guid1")).isFalse(); // its download failed
+    }
+
+    private static boolean isSuitablePublication(UpdateHelper updateHelper, String feedId, String guid, String publicationDate, String latestLoadedPodcastDate) {
+        return updateHelper.isSuitablePublication(feedId, guid, publicationDate, updateHelper.needNewerThanMillis(latestLoadedPodcastDate), updateHelper.notOlderThanMillis());
+    }
+}
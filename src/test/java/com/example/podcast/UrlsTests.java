@@ -0,0 +1,23 @@
+package com.example.podcast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UrlsTests {
+
+    @Test
+    void host_shouldBeLowerCase() {
+        assertThat(Urls.hostOf("https://CDN.test:8443/podcast1.mp3")).isEqualTo("cdn.test");
+    }
+
+    @Test
+    void urlWithoutHost_shouldBeKeyedByItsScheme() {
+        assertThat(Urls.hostOf("mock:podcast1")).isEqualTo("mock");
+    }
+
+    @Test
+    void invalidUrl_shouldHaveEmptyHost() {
+        assertThat(Urls.hostOf("https://cdn.test/podcast 1.mp3")).isEmpty();
+    }
+}